@@ -20,18 +20,28 @@ package opennlp.tools.ml;
 import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Properties;
 import java.util.Queue;
 
 import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.ml.model.SequenceClassificationModel;
 import opennlp.tools.util.BeamSearchContextGenerator;
-import opennlp.tools.util.Cache;
+import opennlp.tools.util.BoundedCache;
 import opennlp.tools.util.Sequence;
 import opennlp.tools.util.SequenceValidator;
 
 /**
  * Performs k-best search over sequence.  This is based on the description in
  * Ratnaparkhi (1998), PhD diss, Univ. of Pennsylvania.
+ * <p>
+ * The scores of a context depend only on its features, so they can be
+ * cached by the content of the features: the same word in the same
+ * surroundings and after the same outcomes is evaluated once, however often
+ * it occurs and however many sequences of the beam reach it. The cache is a
+ * thread-safe {@link BoundedCache} which evicts the least recently used
+ * contexts and counts its hits and misses. It is keyed by a 128 bit hash of
+ * the features instead of the features themselves, so an entry holds no
+ * Strings and a lookup compares two longs.
  *
  * @see Sequence
  * @see SequenceValidator
@@ -41,13 +51,26 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
 
   public static final String BEAM_SIZE_PARAMETER = "BeamSize";
 
+  /**
+   * The manifest property of a model with the number of contexts whose
+   * scores the search caches, 0 disables the cache.
+   */
+  public static final String CACHE_SIZE_PARAMETER = "BeamCacheSize";
+
+  /**
+   * The number of contexts whose scores are cached by the searches the
+   * models create when their manifest does not say otherwise. The cache only
+   * pays off when it holds most of the distinct contexts of the text, so it
+   * is off unless a model asks for one.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 0;
+
   private static final Object[] EMPTY_ADDITIONAL_CONTEXT = new Object[0];
 
   protected int size;
   protected MaxentModel model;
 
-  private double[] probs;
-  private Cache<String[], double[]> contextsCache;
+  private final BoundedCache<ContextKey, double[]> contextsCache;
   private static final int zeroLog = -100000;
 
   /**
@@ -60,16 +83,39 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
     this(size, model, 0);
   }
 
+  /**
+   * Creates new search object which caches the scores of the contexts it
+   * evaluates. The cache is shared by all threads using the search.
+   *
+   * @param size The size of the beam (k).
+   * @param model the model for assigning probabilities to the sequence outcomes.
+   * @param cacheSize the number of contexts whose scores are cached, 0 disables the cache
+   */
   public BeamSearch(int size, MaxentModel model, int cacheSize) {
 
     this.size = size;
     this.model = model;
 
-    if (cacheSize > 0) {
-      contextsCache = new Cache<>(cacheSize);
-    }
+    contextsCache = cacheSize > 0 ? new BoundedCache<>(cacheSize) : null;
+  }
 
-    this.probs = new double[model.getNumOutcomes()];
+  /**
+   * Reads the cache size from the manifest of a model.
+   *
+   * @return the value of {@link #CACHE_SIZE_PARAMETER}, or
+   *     {@link #DEFAULT_CACHE_SIZE} if it is not set
+   */
+  public static int getCacheSize(Properties manifest) {
+    String cacheSizeString = manifest.getProperty(CACHE_SIZE_PARAMETER);
+    return cacheSizeString != null ? Integer.parseInt(cacheSizeString) : DEFAULT_CACHE_SIZE;
+  }
+
+  /**
+   * @return the cache of the scores of the contexts with its hit and miss
+   *     counts, or <code>null</code> if the search has none
+   */
+  public BoundedCache<?, double[]> getContextsCache() {
+    return contextsCache;
   }
 
   /**
@@ -95,6 +141,9 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
       additionalContext = EMPTY_ADDITIONAL_CONTEXT;
     }
 
+    // per call, so threads can share the search
+    double[] probs = new double[model.getNumOutcomes()];
+
     for (int i = 0; i < sequence.length; i++) {
       int sz = Math.min(size, prev.size());
 
@@ -105,17 +154,16 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
         String[] contexts = cg.getContext(i, sequence, outcomes, additionalContext);
         double[] scores;
         if (contextsCache != null) {
-          scores = contextsCache.computeIfAbsent(contexts, c -> model.eval(c, probs));
+          // a cached array is shared, so it gets its own and is never modified
+          scores = contextsCache.computeIfAbsent(new ContextKey(contexts),
+              key -> model.eval(contexts));
         } else {
+          // not every model overwrites the array, QNModel adds to it
+          Arrays.fill(probs, 0);
           scores = model.eval(contexts, probs);
         }
 
-        double[] temp_scores = new double[scores.length];
-        System.arraycopy(scores, 0, temp_scores, 0, scores.length);
-
-        Arrays.sort(temp_scores);
-
-        double min = temp_scores[Math.max(0,scores.length - size)];
+        double min = kthLargest(scores, size);
 
         for (int p = 0; p < scores.length; p++) {
           if (scores[p] >= min) {
@@ -159,6 +207,33 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
     return topSequences;
   }
 
+  /**
+   * @return the k-th largest of the scores, or the smallest one if there are
+   *     fewer than k, as the sorted scores would have it
+   */
+  private static double kthLargest(double[] scores, int k) {
+    if (k >= scores.length) {
+      double min = scores[0];
+      for (int p = 1; p < scores.length; p++) {
+        min = Math.min(min, scores[p]);
+      }
+      return min;
+    }
+    // the k largest scores so far in descending order, as the beam is small
+    double[] top = new double[k];
+    Arrays.fill(top, Double.NEGATIVE_INFINITY);
+    for (double score : scores) {
+      if (score > top[k - 1]) {
+        int i = k - 1;
+        for (; i > 0 && score > top[i - 1]; i--) {
+          top[i] = top[i - 1];
+        }
+        top[i] = score;
+      }
+    }
+    return top[k - 1];
+  }
+
   public Sequence[] bestSequences(int numSequences, T[] sequence,
       Object[] additionalContext, BeamSearchContextGenerator<T> cg, SequenceValidator<T> validator) {
     return bestSequences(numSequences, sequence, additionalContext, zeroLog, cg, validator);
@@ -184,4 +259,49 @@ public class BeamSearch<T> implements SequenceClassificationModel<T> {
 
     return outcomes;
   }
+
+  /**
+   * The features of a context as a cache key: two independent 64 bit hashes
+   * of their characters, a FNV-1a hash and a polynomial one. Two different
+   * contexts among a billion collide with a probability of about 10^-20.
+   */
+  private static final class ContextKey {
+
+    private final long hash1;
+    private final long hash2;
+
+    ContextKey(String[] contexts) {
+      long h1 = 0xcbf29ce484222325L;
+      long h2 = contexts.length;
+      for (String feature : contexts) {
+        for (int i = 0; i < feature.length(); i++) {
+          char c = feature.charAt(i);
+          h1 = (h1 ^ c) * 0x100000001b3L;
+          h2 = h2 * 0x9E3779B97F4A7C15L + c;
+        }
+        // separates the features, so "ab","c" differs from "a","bc"
+        h1 = (h1 ^ 0xFFFF) * 0x100000001b3L;
+        h2 = h2 * 0x9E3779B97F4A7C15L + feature.length();
+      }
+      hash1 = h1;
+      hash2 = h2;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (hash1 ^ (hash1 >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof ContextKey) {
+        ContextKey key = (ContextKey) obj;
+        return hash1 == key.hash1 && hash2 == key.hash2;
+      }
+      return false;
+    }
+  }
 }
@@ -20,6 +20,8 @@ package opennlp.tools.ml.maxent;
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Context;
 import opennlp.tools.ml.model.EvalParameters;
+import opennlp.tools.ml.model.EvalWorkspace;
+import opennlp.tools.ml.model.FlatParameters;
 import opennlp.tools.ml.model.Prior;
 import opennlp.tools.ml.model.UniformPrior;
 
@@ -112,6 +114,27 @@ public final class GISModel extends AbstractModel {
     return GISModel.eval(scontexts, values, outsums, evalParams);
   }
 
+  /**
+   * Evaluates the context over the {@link FlatParameters} of this model,
+   * with the same result as {@link #eval(String[], float[], double[])}.
+   */
+  @Override
+  public double[] eval(int[] context, float[] values, EvalWorkspace ws) {
+    double[] outsums = getOutsums(ws);
+    prior.logPrior(outsums, context, values);
+    FlatParameters params = getFlatParameters();
+    double value = 1;
+    for (int ci = 0; ci < context.length; ci++) {
+      if (context[ci] >= 0) {
+        if (values != null) {
+          value = values[ci];
+        }
+        params.addTo(context[ci], value, outsums);
+      }
+    }
+    return normalize(outsums, getNumOutcomes());
+  }
+
 
   /**
    * Use this model to evaluate a context and return an array of the likelihood
@@ -156,7 +179,6 @@ public final class GISModel extends AbstractModel {
   public static double[] eval(int[] context, float[] values, double[] prior,
       EvalParameters model) {
     Context[] params = model.getParams();
-    int[] numfeats = new int[model.getNumOutcomes()];
     int[] activeOutcomes;
     double[] activeParameters;
     double value = 1;
@@ -170,21 +192,23 @@ public final class GISModel extends AbstractModel {
         }
         for (int ai = 0; ai < activeOutcomes.length; ai++) {
           int oid = activeOutcomes[ai];
-          numfeats[oid]++;
           prior[oid] += activeParameters[ai] * value;
         }
       }
     }
+    return normalize(prior, model.getNumOutcomes());
+  }
 
+  private static double[] normalize(double[] outsums, int numOutcomes) {
     double normal = 0.0;
-    for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-      prior[oid] = Math.exp(prior[oid]);
-      normal += prior[oid];
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] = Math.exp(outsums[oid]);
+      normal += outsums[oid];
     }
 
-    for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-      prior[oid] /= normal;
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] /= normal;
     }
-    return prior;
+    return outsums;
   }
 }
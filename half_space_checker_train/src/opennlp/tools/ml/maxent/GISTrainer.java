@@ -18,22 +18,23 @@
 package opennlp.tools.ml.maxent;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import opennlp.tools.ml.AbstractEventTrainer;
 import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
 import opennlp.tools.ml.model.DataIndexer;
-import opennlp.tools.ml.model.EvalParameters;
 import opennlp.tools.ml.model.Event;
 import opennlp.tools.ml.model.MaxentModel;
-import opennlp.tools.ml.model.MutableContext;
 import opennlp.tools.ml.model.OnePassDataIndexer;
 import opennlp.tools.ml.model.Prior;
 import opennlp.tools.ml.model.UniformPrior;
@@ -57,6 +58,13 @@ import opennlp.tools.util.TrainingParameters;
  * A prior can be used to train models which converge to the distribution which minimizes the
  * relative entropy between the distribution specified by the empirical constraints of the training
  * data and the specified prior.  By default, the uniform distribution is used as the prior.
+ * <p>
+ * The parameters and expectations of all predicates are kept in flat arrays, the ones of the
+ * active outcomes of a predicate together. Every iteration the events are split into one range
+ * for every thread, which sums the model expectations of its range into its own array, and then
+ * the parameters are split into one range for every thread, which adds the model expectations of
+ * all threads for its range and updates the parameters. The threads are the calling thread and
+ * the threads of a pool which is shared by all trainers.
  */
 public class GISTrainer extends AbstractEventTrainer {
 
@@ -115,26 +123,38 @@ public class GISTrainer extends AbstractEventTrainer {
    * allow users to know what the outcome was in human understandable terms.
    */
   private String[] predLabels;
+  /**
+   * The index of the first active outcome of each predicate in the arrays below, and after them
+   * the number of active outcomes of all predicates.
+   */
+  private int[] predOffsets;
+  /**
+   * The active outcomes of all predicates, the ones of a predicate in ascending order.
+   */
+  private int[] activeOutcomes;
   /**
    * Stores the observed expected values of the features based on training data.
    */
-  private MutableContext[] observedExpects;
+  private double[] observedExpects;
   /**
-   * Stores the estimated parameter value of each predicate during iteration
+   * Stores the estimated parameter value of each feature during iteration
    */
-  private MutableContext[] params;
+  private double[] params;
   /**
-   * Stores the expected values of the features based on the current models
+   * Stores the expected values of the features based on the current models, for each thread
    */
-  private MutableContext[][] modelExpects;
+  private double[][] modelExpects;
   /**
    * This is the prior distribution that the model uses for training.
    */
   private Prior prior;
+
   /**
-   * Initial probability for all outcomes.
+   * The pool of the threads which compute the iterations with the calling thread, shared by all
+   * trainers. It grows to the largest number of threads a trainer used, and its threads end when
+   * they are idle.
    */
-  private EvalParameters evalParams;
+  private static ThreadPoolExecutor executor;
 
   public static final String MAXENT_VALUE = "MAXENT";
 
@@ -294,16 +314,12 @@ public class GISTrainer extends AbstractEventTrainer {
       throw new IllegalArgumentException("threads must be at least one or greater but is " + threads + "!");
     }
 
-    modelExpects = new MutableContext[threads][];
+    modelExpects = new double[threads][];
 
     /* Incorporate all of the needed info *****/
     display("Incorporating indexed data for training...  \n");
     contexts = di.getContexts();
     values = di.getValues();
-    /*
-    The number of times a predicate occured in the training data.
-   */
-    int[] predicateCounts = di.getPredCounts();
     numTimesEventsSeen = di.getNumTimesEventsSeen();
     numUniqueEvents = contexts.length;
     this.prior = modelPrior;
@@ -341,14 +357,15 @@ public class GISTrainer extends AbstractEventTrainer {
     display("\t    Number of Outcomes: " + numOutcomes + "\n");
     display("\t  Number of Predicates: " + numPreds + "\n");
 
-    // set up feature arrays
-    float[][] predCount = new float[numPreds][numOutcomes];
+    // set up feature arrays, the counts of predicate pi at pi * numOutcomes
+    float[] predCount = new float[numPreds * numOutcomes];
     for (int ti = 0; ti < numUniqueEvents; ti++) {
       for (int j = 0; j < contexts[ti].length; j++) {
         if (values != null && values[ti] != null) {
-          predCount[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti] * values[ti][j];
+          predCount[contexts[ti][j] * numOutcomes + outcomeList[ti]] +=
+              numTimesEventsSeen[ti] * values[ti][j];
         } else {
-          predCount[contexts[ti][j]][outcomeList[ti]] += numTimesEventsSeen[ti];
+          predCount[contexts[ti][j] * numOutcomes + outcomeList[ti]] += numTimesEventsSeen[ti];
         }
       }
     }
@@ -358,63 +375,39 @@ public class GISTrainer extends AbstractEventTrainer {
     // feature during training.
     final double smoothingObservation = _smoothingObservation;
 
+    // determine the active outcomes, all of them with smoothing
+    predOffsets = new int[numPreds + 1];
+    for (int pi = 0; pi < numPreds; pi++) {
+      int numActiveOutcomes = 0;
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        if (useSimpleSmoothing || predCount[pi * numOutcomes + oi] > 0) {
+          numActiveOutcomes++;
+        }
+      }
+      predOffsets[pi + 1] = predOffsets[pi] + numActiveOutcomes;
+    }
+
     // Get the observed expectations of the features. Strictly speaking,
     // we should divide the counts by the number of Tokens, but because of
     // the way the model's expectations are approximated in the
     // implementation, this is cancelled out when we compute the next
     // iteration of a parameter, making the extra divisions wasteful.
-    params = new MutableContext[numPreds];
+    int numFeatures = predOffsets[numPreds];
+    activeOutcomes = new int[numFeatures];
+    params = new double[numFeatures];
+    observedExpects = new double[numFeatures];
     for (int i = 0; i < modelExpects.length; i++) {
-      modelExpects[i] = new MutableContext[numPreds];
+      modelExpects[i] = new double[numFeatures];
     }
-    observedExpects = new MutableContext[numPreds];
-
-    // The model does need the correction constant and the correction feature. The correction constant
-    // is only needed during training, and the correction feature is not necessary.
-    // For compatibility reasons the model contains form now on a correction constant of 1,
-    // and a correction param 0.
-    evalParams = new EvalParameters(params, numOutcomes);
-    int[] activeOutcomes = new int[numOutcomes];
-    int[] outcomePattern;
-    int[] allOutcomesPattern = new int[numOutcomes];
-    for (int oi = 0; oi < numOutcomes; oi++) {
-      allOutcomesPattern[oi] = oi;
-    }
-    int numActiveOutcomes;
-    for (int pi = 0; pi < numPreds; pi++) {
-      numActiveOutcomes = 0;
-      if (useSimpleSmoothing) {
-        numActiveOutcomes = numOutcomes;
-        outcomePattern = allOutcomesPattern;
-      } else { //determine active outcomes
-        for (int oi = 0; oi < numOutcomes; oi++) {
-          if (predCount[pi][oi] > 0) {
-            activeOutcomes[numActiveOutcomes] = oi;
-            numActiveOutcomes++;
-          }
-        }
-        if (numActiveOutcomes == numOutcomes) {
-          outcomePattern = allOutcomesPattern;
-        } else {
-          outcomePattern = new int[numActiveOutcomes];
-          System.arraycopy(activeOutcomes, 0, outcomePattern, 0, numActiveOutcomes);
-        }
-      }
-      params[pi] = new MutableContext(outcomePattern, new double[numActiveOutcomes]);
-      for (int i = 0; i < modelExpects.length; i++) {
-        modelExpects[i][pi] = new MutableContext(outcomePattern, new double[numActiveOutcomes]);
-      }
-      observedExpects[pi] = new MutableContext(outcomePattern, new double[numActiveOutcomes]);
-      for (int aoi = 0; aoi < numActiveOutcomes; aoi++) {
-        int oi = outcomePattern[aoi];
-        params[pi].setParameter(aoi, 0.0);
-        for (MutableContext[] modelExpect : modelExpects) {
-          modelExpect[pi].setParameter(aoi, 0.0);
-        }
-        if (predCount[pi][oi] > 0) {
-          observedExpects[pi].setParameter(aoi, predCount[pi][oi]);
+    for (int pi = 0, ai = 0; pi < numPreds; pi++) {
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        float count = predCount[pi * numOutcomes + oi];
+        if (count > 0) {
+          activeOutcomes[ai] = oi;
+          observedExpects[ai++] = count;
         } else if (useSimpleSmoothing) {
-          observedExpects[pi].setParameter(aoi, smoothingObservation);
+          activeOutcomes[ai] = oi;
+          observedExpects[ai++] = smoothingObservation;
         }
       }
     }
@@ -431,16 +424,51 @@ public class GISTrainer extends AbstractEventTrainer {
     findParameters(iterations, correctionConstant);
 
     // Create and return the model
-    return new GISModel(params, predLabels, outcomeLabels);
+    // The model does need the correction constant and the correction feature. The correction constant
+    // is only needed during training, and the correction feature is not necessary.
+    // For compatibility reasons the model contains form now on a correction constant of 1,
+    // and a correction param 0.
+    Context[] modelParams = new Context[numPreds];
+    int[] allOutcomesPattern = new int[numOutcomes];
+    for (int oi = 0; oi < numOutcomes; oi++) {
+      allOutcomesPattern[oi] = oi;
+    }
+    for (int pi = 0; pi < numPreds; pi++) {
+      int start = predOffsets[pi];
+      int end = predOffsets[pi + 1];
+      int[] outcomePattern = end - start == numOutcomes ? allOutcomesPattern
+          : Arrays.copyOfRange(activeOutcomes, start, end);
+      modelParams[pi] = new Context(outcomePattern, Arrays.copyOfRange(params, start, end));
+    }
+    params = null;
+    activeOutcomes = null;
+    predOffsets = null;
+
+    return new GISModel(modelParams, predLabels, outcomeLabels);
 
   }
 
   /* Estimate and return the model parameters. */
   private void findParameters(int iterations, double correctionConstant) {
     int threads = modelExpects.length;
-    ExecutorService executor = Executors.newFixedThreadPool(threads);
-    CompletionService<ModelExpectationComputeTask> completionService =
-        new ExecutorCompletionService<>(executor);
+
+    // Each thread gets equal number of events, if the number of events
+    // is not divisible by the number of threads, the first "leftOver"
+    // threads have one extra event. The features are split the same way.
+    ModelExpectationComputeTask[] expectationTasks = new ModelExpectationComputeTask[threads];
+    ParameterUpdateTask[] updateTasks = new ParameterUpdateTask[threads];
+    int taskSize = numUniqueEvents / threads;
+    int leftOver = numUniqueEvents % threads;
+    int featureTaskSize = params.length / threads;
+    int featureLeftOver = params.length % threads;
+    for (int i = 0; i < threads; i++) {
+      expectationTasks[i] = new ModelExpectationComputeTask(i,
+          i * taskSize + Math.min(i, leftOver), taskSize + (i < leftOver ? 1 : 0));
+      updateTasks[i] = new ParameterUpdateTask(correctionConstant,
+          i * featureTaskSize + Math.min(i, featureLeftOver),
+          featureTaskSize + (i < featureLeftOver ? 1 : 0));
+    }
+
     double prevLL = 0.0;
     double currLL;
     display("Performing " + iterations + " iterations.\n");
@@ -452,7 +480,7 @@ public class GISTrainer extends AbstractEventTrainer {
       } else {
         display(i + ":  ");
       }
-      currLL = nextIteration(correctionConstant, completionService);
+      currLL = nextIteration(expectationTasks, updateTasks);
       if (i > 1) {
         if (prevLL > currLL) {
           System.err.println("Model Diverging: loglikelihood decreased");
@@ -470,15 +498,14 @@ public class GISTrainer extends AbstractEventTrainer {
     modelExpects = null;
     numTimesEventsSeen = null;
     contexts = null;
-    executor.shutdown();
   }
 
   //modeled on implementation in  Zhang Le's maxent kit
-  private double gaussianUpdate(int predicate, int oid, double correctionConstant) {
-    double param = params[predicate].getParameters()[oid];
+  private double gaussianUpdate(int feature, double correctionConstant) {
+    double param = params[feature];
     double x0 = 0.0;
-    double modelValue = modelExpects[0][predicate].getParameters()[oid];
-    double observedValue = observedExpects[predicate].getParameters()[oid];
+    double modelValue = modelExpects[0][feature];
+    double observedValue = observedExpects[feature];
     for (int i = 0; i < 50; i++) {
       double tmp = modelValue * Math.exp(correctionConstant * x0);
       double f = tmp + (param + x0) / sigma - observedValue;
@@ -497,36 +524,52 @@ public class GISTrainer extends AbstractEventTrainer {
   }
 
   /* Compute one iteration of GIS and retutn log-likelihood.*/
-  private double nextIteration(double correctionConstant,
-                               CompletionService<ModelExpectationComputeTask> completionService) {
+  private double nextIteration(ModelExpectationComputeTask[] expectationTasks,
+                               ParameterUpdateTask[] updateTasks) {
     // compute contribution of p(a|b_i) for each feature and the new
     // correction parameter
     double loglikelihood = 0.0;
     int numEvents = 0;
     int numCorrect = 0;
 
-    // Each thread gets equal number of tasks, if the number of tasks
-    // is not divisible by the number of threads, the first "leftOver"
-    // threads have one extra task.
-    int numberOfThreads = modelExpects.length;
-    int taskSize = numUniqueEvents / numberOfThreads;
-    int leftOver = numUniqueEvents % numberOfThreads;
-
-    // submit all tasks to the completion service.
-    for (int i = 0; i < numberOfThreads; i++) {
-      if (i < leftOver) {
-        completionService.submit(new ModelExpectationComputeTask(i, i * taskSize + i,
-            taskSize + 1));
-      } else {
-        completionService.submit(new ModelExpectationComputeTask(i,
-            i * taskSize + leftOver, taskSize));
+    computeInParallel(expectationTasks);
+
+    // retrieve the results in the order of the threads, so they do not depend on timing
+    for (ModelExpectationComputeTask finishedTask : expectationTasks) {
+      numEvents += finishedTask.numEvents;
+      numCorrect += finishedTask.numCorrect;
+      loglikelihood += finishedTask.loglikelihood;
+    }
+
+    display(".");
+
+    // merge the results of the threads and compute the new parameter values
+    computeInParallel(updateTasks);
+
+    display(".");
+
+    display(". loglikelihood=" + loglikelihood + "\t" + ((double) numCorrect / numEvents) + "\n");
+
+    return loglikelihood;
+  }
+
+  /**
+   * Runs the tasks, the last one in the calling thread, and waits for them.
+   */
+  private static void computeInParallel(Runnable[] tasks) {
+    List<Future<?>> futures = new ArrayList<>(tasks.length - 1);
+    if (tasks.length > 1) {
+      ThreadPoolExecutor pool = getExecutor(tasks.length - 1);
+      for (int i = 0; i < tasks.length - 1; i++) {
+        futures.add(pool.submit(tasks[i]));
       }
     }
 
-    for (int i = 0; i < numberOfThreads; i++) {
-      ModelExpectationComputeTask finishedTask;
+    tasks[tasks.length - 1].run();
+
+    for (Future<?> future : futures) {
       try {
-        finishedTask = completionService.take().get();
+        future.get();
       } catch (InterruptedException e) {
         // TODO: We got interrupted, but that is currently not really supported!
         // For now we just print the exception and fail hard. We hopefully soon
@@ -537,57 +580,29 @@ public class GISTrainer extends AbstractEventTrainer {
         // Only runtime exception can be thrown during training, if one was thrown
         // it should be re-thrown. That could for example be a NullPointerException
         // which is caused through a bug in our implementation.
-        throw new RuntimeException("Exception during training: " + e.getMessage(), e);
-      }
-
-      // When they are done, retrieve the results ...
-      numEvents += finishedTask.getNumEvents();
-      numCorrect += finishedTask.getNumCorrect();
-      loglikelihood += finishedTask.getLoglikelihood();
-    }
-
-    display(".");
-
-    // merge the results of the two computations
-    for (int pi = 0; pi < numPreds; pi++) {
-      int[] activeOutcomes = params[pi].getOutcomes();
-
-      for (int aoi = 0; aoi < activeOutcomes.length; aoi++) {
-        for (int i = 1; i < modelExpects.length; i++) {
-          modelExpects[0][pi].updateParameter(aoi, modelExpects[i][pi].getParameters()[aoi]);
-        }
+        throw new RuntimeException("Exception during training: " + e.getCause().getMessage(),
+            e.getCause());
       }
     }
+  }
 
-    display(".");
-
-    // compute the new parameter values
-    for (int pi = 0; pi < numPreds; pi++) {
-      double[] observed = observedExpects[pi].getParameters();
-      double[] model = modelExpects[0][pi].getParameters();
-      int[] activeOutcomes = params[pi].getOutcomes();
-      for (int aoi = 0; aoi < activeOutcomes.length; aoi++) {
-        if (useGaussianSmoothing) {
-          params[pi].updateParameter(aoi, gaussianUpdate(pi, aoi, correctionConstant));
-        } else {
-          if (model[aoi] == 0) {
-            System.err.println("Model expects == 0 for " + predLabels[pi] + " " + outcomeLabels[aoi]);
-          }
-          //params[pi].updateParameter(aoi,(Math.log(observed[aoi]) - Math.log(model[aoi])));
-          params[pi].updateParameter(aoi, ((Math.log(observed[aoi]) - Math.log(model[aoi]))
-              / correctionConstant));
-        }
-
-        for (MutableContext[] modelExpect : modelExpects) {
-          modelExpect[pi].setParameter(aoi, 0.0); // re-initialize to 0.0's
-        }
-
-      }
+  /**
+   * @return the shared pool, with at least <code>threads</code> threads
+   */
+  private static synchronized ThreadPoolExecutor getExecutor(int threads) {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "gis-trainer");
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor.allowCoreThreadTimeOut(true);
+    } else if (executor.getMaximumPoolSize() < threads) {
+      executor.setMaximumPoolSize(threads);
+      executor.setCorePoolSize(threads);
     }
-
-    display(". loglikelihood=" + loglikelihood + "\t" + ((double) numCorrect / numEvents) + "\n");
-
-    return loglikelihood;
+    return executor;
   }
 
   protected void display(String s) {
@@ -596,58 +611,75 @@ public class GISTrainer extends AbstractEventTrainer {
     }
   }
 
-  private class ModelExpectationComputeTask implements Callable<ModelExpectationComputeTask> {
+  private class ModelExpectationComputeTask implements Runnable {
 
     private final int startIndex;
     private final int length;
-    final private int threadIndex;
-    private double loglikelihood = 0;
-    private int numEvents = 0;
-    private int numCorrect = 0;
+    private final int threadIndex;
+    private final double[] modelDistribution;
+    double loglikelihood;
+    int numEvents;
+    int numCorrect;
 
     // startIndex to compute, number of events to compute
     ModelExpectationComputeTask(int threadIndex, int startIndex, int length) {
       this.startIndex = startIndex;
       this.length = length;
       this.threadIndex = threadIndex;
+      modelDistribution = new double[numOutcomes];
     }
 
-    public ModelExpectationComputeTask call() {
-
-      final double[] modelDistribution = new double[numOutcomes];
+    @Override
+    public void run() {
+      loglikelihood = 0;
+      numEvents = 0;
+      numCorrect = 0;
 
+      final double[] modelExpect = modelExpects[threadIndex];
 
       for (int ei = startIndex; ei < startIndex + length; ei++) {
 
         // TODO: check interruption status here, if interrupted set a poisoned flag and return
 
+        int[] context = contexts[ei];
+        float[] value = values == null ? null : values[ei];
         if (values != null) {
-          prior.logPrior(modelDistribution, contexts[ei], values[ei]);
-          GISModel.eval(contexts[ei], values[ei], modelDistribution, evalParams);
+          prior.logPrior(modelDistribution, context, value);
         } else {
-          prior.logPrior(modelDistribution, contexts[ei]);
-          GISModel.eval(contexts[ei], modelDistribution, evalParams);
+          prior.logPrior(modelDistribution, context);
         }
-        for (int j = 0; j < contexts[ei].length; j++) {
-          int pi = contexts[ei][j];
-          int[] activeOutcomes = modelExpects[threadIndex][pi].getOutcomes();
-          for (int aoi = 0; aoi < activeOutcomes.length; aoi++) {
-            int oi = activeOutcomes[aoi];
-
-            // numTimesEventsSeen must also be thread safe
-            if (values != null && values[ei] != null) {
-              modelExpects[threadIndex][pi].updateParameter(aoi, modelDistribution[oi]
-                  * values[ei][j] * numTimesEventsSeen[ei]);
+        eval(context, value);
+
+        int seen = numTimesEventsSeen[ei];
+        for (int j = 0; j < context.length; j++) {
+          int pi = context[j];
+          int start = predOffsets[pi];
+          int end = predOffsets[pi + 1];
+          if (end - start == numOutcomes) {
+            // all outcomes are active, loops without indirection
+            if (value != null) {
+              for (int oi = 0; oi < numOutcomes; oi++) {
+                modelExpect[start + oi] += modelDistribution[oi] * value[j] * seen;
+              }
             } else {
-              modelExpects[threadIndex][pi].updateParameter(aoi, modelDistribution[oi]
-                  * numTimesEventsSeen[ei]);
+              for (int oi = 0; oi < numOutcomes; oi++) {
+                modelExpect[start + oi] += modelDistribution[oi] * seen;
+              }
+            }
+          } else if (value != null) {
+            for (int ai = start; ai < end; ai++) {
+              modelExpect[ai] += modelDistribution[activeOutcomes[ai]] * value[j] * seen;
+            }
+          } else {
+            for (int ai = start; ai < end; ai++) {
+              modelExpect[ai] += modelDistribution[activeOutcomes[ai]] * seen;
             }
           }
         }
 
-        loglikelihood += Math.log(modelDistribution[outcomeList[ei]]) * numTimesEventsSeen[ei];
+        loglikelihood += Math.log(modelDistribution[outcomeList[ei]]) * seen;
 
-        numEvents += numTimesEventsSeen[ei];
+        numEvents += seen;
         if (printMessages) {
           int max = 0;
           for (int oi = 1; oi < numOutcomes; oi++) {
@@ -656,25 +688,108 @@ public class GISTrainer extends AbstractEventTrainer {
             }
           }
           if (max == outcomeList[ei]) {
-            numCorrect += numTimesEventsSeen[ei];
+            numCorrect += seen;
           }
         }
 
       }
+    }
 
-      return this;
+    /**
+     * Adds the parameters of the context to the prior in the model distribution and normalizes
+     * it, like {@link GISModel#eval(int[], float[], double[], opennlp.tools.ml.model.EvalParameters)}.
+     */
+    private void eval(int[] context, float[] value) {
+      double v = 1;
+      for (int ci = 0; ci < context.length; ci++) {
+        int pi = context[ci];
+        if (pi >= 0) {
+          if (value != null) {
+            v = value[ci];
+          }
+          int start = predOffsets[pi];
+          int end = predOffsets[pi + 1];
+          if (end - start == numOutcomes) {
+            for (int oi = 0; oi < numOutcomes; oi++) {
+              modelDistribution[oi] += params[start + oi] * v;
+            }
+          } else {
+            for (int ai = start; ai < end; ai++) {
+              modelDistribution[activeOutcomes[ai]] += params[ai] * v;
+            }
+          }
+        }
+      }
+
+      double normal = 0.0;
+      for (int oid = 0; oid < numOutcomes; oid++) {
+        modelDistribution[oid] = Math.exp(modelDistribution[oid]);
+        normal += modelDistribution[oid];
+      }
+      for (int oid = 0; oid < numOutcomes; oid++) {
+        modelDistribution[oid] /= normal;
+      }
     }
+  }
+
+  /**
+   * Adds the model expectations of all threads for a range of the features and updates their
+   * parameters.
+   */
+  private class ParameterUpdateTask implements Runnable {
+
+    private final double correctionConstant;
+    private final int startIndex;
+    private final int length;
 
-    synchronized int getNumEvents() {
-      return numEvents;
+    ParameterUpdateTask(double correctionConstant, int startIndex, int length) {
+      this.correctionConstant = correctionConstant;
+      this.startIndex = startIndex;
+      this.length = length;
     }
 
-    synchronized int getNumCorrect() {
-      return numCorrect;
+    @Override
+    public void run() {
+      int end = startIndex + length;
+      double[] model = modelExpects[0];
+
+      // merge the results of the threads
+      for (int i = 1; i < modelExpects.length; i++) {
+        double[] modelExpect = modelExpects[i];
+        for (int ai = startIndex; ai < end; ai++) {
+          model[ai] += modelExpect[ai];
+        }
+        Arrays.fill(modelExpect, startIndex, end, 0.0);
+      }
+
+      // compute the new parameter values
+      for (int ai = startIndex; ai < end; ai++) {
+        if (useGaussianSmoothing) {
+          params[ai] += gaussianUpdate(ai, correctionConstant);
+        } else {
+          if (model[ai] == 0) {
+            System.err.println("Model expects == 0 for " + predLabel(ai) + " "
+                + outcomeLabels[activeOutcomes[ai]]);
+          }
+          //params[ai] += (Math.log(observedExpects[ai]) - Math.log(model[ai]));
+          params[ai] += ((Math.log(observedExpects[ai]) - Math.log(model[ai]))
+              / correctionConstant);
+        }
+      }
+      Arrays.fill(model, startIndex, end, 0.0); // re-initialize to 0.0's
     }
 
-    synchronized double getLoglikelihood() {
-      return loglikelihood;
+    private String predLabel(int feature) {
+      int pi = Arrays.binarySearch(predOffsets, feature);
+      if (pi < 0) {
+        pi = -pi - 2;
+      } else {
+        // predicates without active outcomes share the offset of the next one
+        while (predOffsets[pi + 1] == feature) {
+          pi++;
+        }
+      }
+      return predLabels[pi];
     }
   }
 }
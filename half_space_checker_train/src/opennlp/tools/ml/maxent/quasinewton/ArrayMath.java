@@ -77,8 +77,17 @@ public class ArrayMath {
   }
 
   public static double max(double[] x) {
-    int maxIdx = maxIdx(x);
-    return x[maxIdx];
+    if (x == null || x.length == 0) {
+      throw new IllegalArgumentException("Vector x is null or empty");
+    }
+
+    // the value instead of the index of the maximum, which needs no reload
+    double max = x[0];
+    for (int i = 1; i < x.length; i++) {
+      if (max < x[i])
+        max = x[i];
+    }
+    return max;
   }
 
   /**
@@ -24,6 +24,11 @@ import opennlp.tools.ml.model.OnePassRealValueDataIndexer;
 
 /**
  * Evaluate negative log-likelihood and its gradient from DataIndexer.
+ * <p>
+ * The parameters of a feature for all outcomes are stored one after the
+ * other, so the scores of a context are sums of consecutive elements and the
+ * gradient of a context is added to consecutive elements, in loops the JIT
+ * compiler vectorizes.
  */
 public class NegLogLikelihood implements Function {
 
@@ -84,27 +89,7 @@ public class NegLogLikelihood implements Function {
       throw new IllegalArgumentException(
           "x is invalid, its dimension is not equal to domain dimension.");
 
-    int ci, oi, ai, vectorIndex, outcome;
-    double predValue, logSumOfExps;
-    double negLogLikelihood = 0;
-
-    for (ci = 0; ci < numContexts; ci++) {
-      for (oi = 0; oi < numOutcomes; oi++) {
-        tempSums[oi] = 0;
-        for (ai = 0; ai < contexts[ci].length; ai++) {
-          vectorIndex = indexOf(oi, contexts[ci][ai]);
-          predValue = values != null ? values[ci][ai] : 1.0;
-          tempSums[oi] += predValue * x[vectorIndex];
-        }
-      }
-
-      logSumOfExps = ArrayMath.logSumOfExps(tempSums);
-
-      outcome = outcomeList[ci];
-      negLogLikelihood -= (tempSums[outcome] - logSumOfExps) * numTimesEventsSeen[ci];
-    }
-
-    return negLogLikelihood;
+    return valueAt(x, 0, numContexts, tempSums);
   }
 
   /**
@@ -116,44 +101,112 @@ public class NegLogLikelihood implements Function {
       throw new IllegalArgumentException(
           "x is invalid, its dimension is not equal to the function.");
 
-    int ci, oi, ai, vectorIndex;
-    double predValue, logSumOfExps;
-    int empirical;
-
     // Reset gradient
     Arrays.fill(gradient, 0);
 
-    for (ci = 0; ci < numContexts; ci++) {
-      for (oi = 0; oi < numOutcomes; oi++) {
-        expectation[oi] = 0;
-        for (ai = 0; ai < contexts[ci].length; ai++) {
-          vectorIndex = indexOf(oi, contexts[ci][ai]);
-          predValue = values != null ? values[ci][ai] : 1.0;
-          expectation[oi] += predValue * x[vectorIndex];
-        }
-      }
+    addGradientAt(x, 0, numContexts, expectation, gradient);
 
-      logSumOfExps = ArrayMath.logSumOfExps(expectation);
+    return gradient;
+  }
 
-      for (oi = 0; oi < numOutcomes; oi++) {
-        expectation[oi] = Math.exp(expectation[oi] - logSumOfExps);
-      }
+  /**
+   * Computes the negative log-likelihood of the contexts
+   * <code>[startIndex, endIndex)</code>.
+   *
+   * @param sums a buffer for the scores of the outcomes
+   */
+  protected double valueAt(double[] x, int startIndex, int endIndex, double[] sums) {
+    double negLogLikelihood = 0;
+
+    for (int ci = startIndex; ci < endIndex; ci++) {
+      computeSums(x, ci, sums);
+
+      double logSumOfExps = ArrayMath.logSumOfExps(sums);
+
+      negLogLikelihood -= (sums[outcomeList[ci]] - logSumOfExps) * numTimesEventsSeen[ci];
+    }
+
+    return negLogLikelihood;
+  }
 
-      for (oi = 0; oi < numOutcomes; oi++) {
-        empirical = outcomeList[ci] == oi ? 1 : 0;
-        for (ai = 0; ai < contexts[ci].length; ai++) {
-          vectorIndex = indexOf(oi, contexts[ci][ai]);
-          predValue = values != null ? values[ci][ai] : 1.0;
-          gradient[vectorIndex] +=
-              predValue * (expectation[oi] - empirical) * numTimesEventsSeen[ci];
+  /**
+   * Adds the gradient of the contexts <code>[startIndex, endIndex)</code>
+   * to <code>gradient</code>.
+   *
+   * @param expectation a buffer for the expectations of the outcomes
+   */
+  protected void addGradientAt(double[] x, int startIndex, int endIndex,
+      double[] expectation, double[] gradient) {
+
+    for (int ci = startIndex; ci < endIndex; ci++) {
+      computeSums(x, ci, expectation);
+
+      // the exponentials of the log-sum are the unnormalized expectations
+      double max = ArrayMath.max(expectation);
+      double sumOfExps = 0;
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        expectation[oi] = Math.exp(expectation[oi] - max);
+        sumOfExps += expectation[oi];
+      }
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        expectation[oi] /= sumOfExps;
+      }
+      // minus the empirical expectation
+      expectation[outcomeList[ci]] -= 1;
+
+      int[] context = contexts[ci];
+      int seen = numTimesEventsSeen[ci];
+      if (values == null) {
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          expectation[oi] *= seen;
+        }
+        for (int ai = 0; ai < context.length; ai++) {
+          int offset = context[ai] * numOutcomes;
+          for (int oi = 0; oi < numOutcomes; oi++) {
+            gradient[offset + oi] += expectation[oi];
+          }
+        }
+      }
+      else {
+        float[] value = values[ci];
+        for (int ai = 0; ai < context.length; ai++) {
+          int offset = context[ai] * numOutcomes;
+          double predValue = value[ai];
+          for (int oi = 0; oi < numOutcomes; oi++) {
+            gradient[offset + oi] += predValue * expectation[oi] * seen;
+          }
         }
       }
     }
+  }
 
-    return gradient;
+  /**
+   * Sets the sums to the scores of the outcomes of a context.
+   */
+  private void computeSums(double[] x, int ci, double[] sums) {
+    Arrays.fill(sums, 0);
+    int[] context = contexts[ci];
+    if (values == null) {
+      for (int ai = 0; ai < context.length; ai++) {
+        int offset = context[ai] * numOutcomes;
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          sums[oi] += x[offset + oi];
+        }
+      }
+    }
+    else {
+      float[] value = values[ci];
+      for (int ai = 0; ai < context.length; ai++) {
+        int offset = context[ai] * numOutcomes;
+        double predValue = value[ai];
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          sums[oi] += predValue * x[offset + oi];
+        }
+      }
+    }
   }
 
   protected int indexOf(int outcomeId, int featureId) {
-    return outcomeId * numFeatures + featureId;
+    return featureId * numOutcomes + outcomeId;
   }
 }
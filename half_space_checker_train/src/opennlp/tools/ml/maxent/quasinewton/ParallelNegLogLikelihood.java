@@ -17,21 +17,28 @@
 
 package opennlp.tools.ml.maxent.quasinewton;
 
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import opennlp.tools.ml.model.DataIndexer;
 
 /**
  * Evaluate negative log-likelihood and its gradient in parallel
+ * <p>
+ * The contexts are split into one range for every thread. The ranges are
+ * computed by a pool of threads which lives as long as the function, one of
+ * them by the calling thread, and every range has its own buffers and
+ * partial gradient, which are reused by every evaluation. The pool is shut
+ * down by {@link #close()}, its threads also end when they are idle.
  */
-public class ParallelNegLogLikelihood extends NegLogLikelihood {
+public class ParallelNegLogLikelihood extends NegLogLikelihood implements AutoCloseable {
 
   // Number of threads
   private int threads;
@@ -42,6 +49,14 @@ public class ParallelNegLogLikelihood extends NegLogLikelihood {
   // Partial gradient
   private double[][] gradientThread;
 
+  // Buffers for the scores of the outcomes of each thread
+  private double[][] sumsThread;
+
+  // Start index of the contexts of each thread, and the number of contexts after them
+  private int[] startIndex;
+
+  private final ExecutorService executor;
+
   public ParallelNegLogLikelihood(DataIndexer indexer, int threads) {
     super(indexer);
 
@@ -52,6 +67,25 @@ public class ParallelNegLogLikelihood extends NegLogLikelihood {
     this.threads                = threads;
     this.negLogLikelihoodThread = new double[threads];
     this.gradientThread         = new double[threads][dimension];
+    this.sumsThread             = new double[threads][numOutcomes];
+
+    this.startIndex = new int[threads + 1];
+    int taskSize = numContexts / threads;
+    int leftOver = numContexts % threads;
+    for (int t = 0; t < threads; t++) {
+      startIndex[t + 1] = startIndex[t] + taskSize + (t == threads - 1 ? leftOver : 0);
+    }
+
+    // the calling thread computes the last range
+    int poolSize = Math.max(1, threads - 1);
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize,
+        10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread thread = new Thread(r, "qn-likelihood");
+          thread.setDaemon(true);
+          return thread;
+        });
+    pool.allowCoreThreadTimeOut(true);
+    this.executor = pool;
   }
 
   /**
@@ -65,7 +99,8 @@ public class ParallelNegLogLikelihood extends NegLogLikelihood {
           "x is invalid, its dimension is not equal to domain dimension.");
 
     // Compute partial value of negative log-likelihood in each thread
-    computeInParallel(x, NegLLComputeTask.class);
+    computeInParallel(t -> negLogLikelihoodThread[t] =
+        valueAt(x, startIndex[t], startIndex[t + 1], sumsThread[t]));
 
     double negLogLikelihood = 0;
     for (int t = 0; t < threads; t++) {
@@ -86,13 +121,17 @@ public class ParallelNegLogLikelihood extends NegLogLikelihood {
           "x is invalid, its dimension is not equal to the function.");
 
     // Compute partial gradient in each thread
-    computeInParallel(x, GradientComputeTask.class);
+    computeInParallel(t -> {
+      Arrays.fill(gradientThread[t], 0);
+      addGradientAt(x, startIndex[t], startIndex[t + 1], sumsThread[t], gradientThread[t]);
+    });
 
     // Accumulate gradient
-    for (int i = 0; i < dimension; i++) {
-      gradient[i] = 0;
-      for (int t = 0; t < threads; t++) {
-        gradient[i] += gradientThread[t][i];
+    System.arraycopy(gradientThread[0], 0, gradient, 0, dimension);
+    for (int t = 1; t < threads; t++) {
+      double[] partial = gradientThread[t];
+      for (int i = 0; i < dimension; i++) {
+        gradient[i] += partial[i];
       }
     }
 
@@ -102,147 +141,38 @@ public class ParallelNegLogLikelihood extends NegLogLikelihood {
   /**
    * Compute tasks in parallel
    */
-  private void computeInParallel(double[] x, Class<? extends ComputeTask> taskClass) {
-    ExecutorService executor = Executors.newFixedThreadPool(threads);
-    int taskSize = numContexts / threads;
-    int leftOver = numContexts % threads;
-
-    try {
-      Constructor<? extends ComputeTask> cons = taskClass.getConstructor(
-          ParallelNegLogLikelihood.class,
-          int.class, int.class, int.class, double[].class);
-
-      List<Future<?>> futures = new ArrayList<>();
-      for (int i = 0; i < threads; i++) {
-        if (i != threads - 1)
-          futures.add(executor.submit(
-              cons.newInstance(this, i, i * taskSize, taskSize, x)));
-        else
-          futures.add(executor.submit(
-              cons.newInstance(this, i, i * taskSize, taskSize + leftOver, x)));
-      }
-
-      for (Future<?> future: futures)
-        future.get();
-
-    } catch (Exception e) {
-      e.printStackTrace();
+  private void computeInParallel(Task task) {
+    List<Future<?>> futures = new ArrayList<>(threads - 1);
+    for (int t = 0; t < threads - 1; t++) {
+      int threadIndex = t;
+      futures.add(executor.submit(() -> task.compute(threadIndex)));
     }
 
-    executor.shutdown();
-  }
-
-  /**
-   * Task that is computed in parallel
-   */
-  abstract class ComputeTask implements Callable<ComputeTask> {
-
-    final int threadIndex;
-
-    // Start index of contexts to compute
-    final int startIndex;
-
-    // Number of contexts to compute
-    final int length;
+    task.compute(threads - 1);
 
-    final double[] x;
-
-    public ComputeTask(int threadIndex, int startIndex, int length, double[] x) {
-      this.threadIndex = threadIndex;
-      this.startIndex  = startIndex;
-      this.length      = length;
-      this.x           = x;
+    try {
+      for (Future<?> future : futures)
+        future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while computing in parallel", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
     }
   }
 
   /**
-   * Task for computing partial value of negative log-likelihood
+   * Shuts down the threads.
    */
-  class NegLLComputeTask extends ComputeTask {
-
-    final double[] tempSums;
-
-    public NegLLComputeTask(int threadIndex, int startIndex, int length, double[] x) {
-      super(threadIndex, startIndex, length, x);
-      this.tempSums = new double[numOutcomes];
-    }
-
-    @Override
-    public NegLLComputeTask call() {
-      int ci, oi, ai, vectorIndex, outcome;
-      double predValue, logSumOfExps;
-      negLogLikelihoodThread[threadIndex] = 0;
-
-      for (ci = startIndex; ci < startIndex + length; ci++) {
-        for (oi = 0; oi < numOutcomes; oi++) {
-          tempSums[oi] = 0;
-          for (ai = 0; ai < contexts[ci].length; ai++) {
-            vectorIndex = indexOf(oi, contexts[ci][ai]);
-            predValue = values != null ? values[ci][ai] : 1.0;
-            tempSums[oi] += predValue * x[vectorIndex];
-          }
-        }
-
-        logSumOfExps = ArrayMath.logSumOfExps(tempSums);
-
-        outcome = outcomeList[ci];
-        negLogLikelihoodThread[threadIndex] -=
-            (tempSums[outcome] - logSumOfExps) * numTimesEventsSeen[ci];
-      }
-
-      return this;
-    }
+  @Override
+  public void close() {
+    executor.shutdown();
   }
 
   /**
-   * Task for computing partial gradient
+   * Task that is computed in parallel
    */
-  class GradientComputeTask extends ComputeTask {
-
-    final double[] expectation;
-
-    public GradientComputeTask(int threadIndex, int startIndex, int length, double[] x) {
-      super(threadIndex, startIndex, length, x);
-      this.expectation = new double[numOutcomes];
-    }
-
-    @Override
-    public GradientComputeTask call() {
-      int ci, oi, ai, vectorIndex;
-      double predValue, logSumOfExps;
-      int empirical;
-
-      // Reset gradientThread
-      Arrays.fill(gradientThread[threadIndex], 0);
-
-      for (ci = startIndex; ci < startIndex + length; ci++) {
-        for (oi = 0; oi < numOutcomes; oi++) {
-          expectation[oi] = 0;
-          for (ai = 0; ai < contexts[ci].length; ai++) {
-            vectorIndex = indexOf(oi, contexts[ci][ai]);
-            predValue = values != null ? values[ci][ai] : 1.0;
-            expectation[oi] += predValue * x[vectorIndex];
-          }
-        }
-
-        logSumOfExps = ArrayMath.logSumOfExps(expectation);
-
-        for (oi = 0; oi < numOutcomes; oi++) {
-          expectation[oi] = Math.exp(expectation[oi] - logSumOfExps);
-        }
-
-        for (oi = 0; oi < numOutcomes; oi++) {
-          empirical = outcomeList[ci] == oi ? 1 : 0;
-          for (ai = 0; ai < contexts[ci].length; ai++) {
-            vectorIndex = indexOf(oi, contexts[ci][ai]);
-            predValue = values != null ? values[ci][ai] : 1.0;
-            gradientThread[threadIndex][vectorIndex] +=
-                predValue * (expectation[oi] - empirical) * numTimesEventsSeen[ci];
-          }
-        }
-      }
-
-      return this;
-    }
+  private interface Task {
+    void compute(int threadIndex);
   }
 }
@@ -342,24 +342,57 @@ public class QNMinimizer {
     double[][] S    = updateInfo.S;
     double[][] Y    = updateInfo.Y;
 
+    // The vectors do not fit into the caches, so every update of the
+    // direction also computes the inner product of the next step, and the
+    // last one negates it, which saves passes over the memory and gives the
+    // same result as one pass for every step.
+    if (k == 0) {
+      for (int j = 0; j < dimension; j++) {
+        direction[j] = -direction[j];
+      }
+      return;
+    }
+
     // First loop
+    alpha[k - 1] = rho[k - 1] * ArrayMath.innerProduct(S[k - 1], direction);
     for (int i = k - 1; i >= 0; i--) {
-      alpha[i] = rho[i] * ArrayMath.innerProduct(S[i], direction);
-      for (int j = 0; j < dimension; j++) {
-        direction[j] = direction[j] - alpha[i] * Y[i][j];
+      double[] y = Y[i];
+      double a = alpha[i];
+      if (i > 0) {
+        double[] s = S[i - 1];
+        double product = 0.0;
+        for (int j = 0; j < dimension; j++) {
+          direction[j] = direction[j] - a * y[j];
+          product += s[j] * direction[j];
+        }
+        alpha[i - 1] = rho[i - 1] * product;
+      }
+      else {
+        for (int j = 0; j < dimension; j++) {
+          direction[j] = direction[j] - a * y[j];
+        }
       }
     }
 
     // Second loop
+    double beta = rho[0] * ArrayMath.innerProduct(Y[0], direction);
     for (int i = 0; i < k; i++) {
-      double beta = rho[i] * ArrayMath.innerProduct(Y[i], direction);
-      for (int j = 0; j < dimension; j++) {
-        direction[j] = direction[j] + S[i][j] * (alpha[i] - beta);
+      double[] s = S[i];
+      double step = alpha[i] - beta;
+      if (i < k - 1) {
+        double[] y = Y[i + 1];
+        double product = 0.0;
+        for (int j = 0; j < dimension; j++) {
+          direction[j] = direction[j] + s[j] * step;
+          product += y[j] * direction[j];
+        }
+        beta = rho[i + 1] * product;
+      }
+      else {
+        for (int j = 0; j < dimension; j++) {
+          direction[j] = -(direction[j] + s[j] * step);
+        }
       }
-    }
-
-    for (int i = 0; i < dimension; i++) {
-      direction[i] = -direction[i];
     }
   }
 
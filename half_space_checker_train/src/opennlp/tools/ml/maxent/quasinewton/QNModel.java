@@ -19,6 +19,8 @@ package opennlp.tools.ml.maxent.quasinewton;
 
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.EvalWorkspace;
+import opennlp.tools.ml.model.FlatParameters;
 
 public class QNModel extends AbstractModel {
 
@@ -85,6 +87,29 @@ public class QNModel extends AbstractModel {
     return probs;
   }
 
+  /**
+   * Model evaluation over the {@link FlatParameters} of this model, with the
+   * same result as {@link #eval(String[], float[])}. Every predicate of a
+   * trained model has a parameter for every outcome, so the parameters of a
+   * predicate are added in one loop over consecutive elements.
+   */
+  @Override
+  public double[] eval(int[] context, float[] values, EvalWorkspace ws) {
+    double[] probs = getOutsums(ws);
+    FlatParameters params = getFlatParameters();
+    for (int ci = 0; ci < context.length; ci++) {
+      if (context[ci] >= 0) {
+        params.addTo(context[ci], values != null ? values[ci] : 1.0, probs);
+      }
+    }
+
+    double logSumExp = ArrayMath.logSumOfExps(probs);
+    for (int oi = 0; oi < outcomeNames.length; oi++) {
+      probs[oi] = Math.exp(probs[oi] - logSumExp);
+    }
+    return probs;
+  }
+
   /**
    * Model evaluation which should be used during training to report model accuracy.
    * @param context
@@ -100,8 +125,10 @@ public class QNModel extends AbstractModel {
    * @param nPredLabels
    *          Number of unique predicates
    * @param parameters
-   *          Model parameters
+   *          Model parameters, the ones of an outcome for all predicates one
+   *          after the other
    * @return Normalized probabilities for the outcomes given the context.
+   * @see #evalByPredicate(int[], float[], double[], int, double[])
    */
   @Deprecated // visibility will be reduced in 1.8.1
   public static double[] eval(int[] context, float[] values, double[] probs,
@@ -123,4 +150,34 @@ public class QNModel extends AbstractModel {
 
     return probs;
   }
+
+  /**
+   * Model evaluation over parameters laid out like the ones of
+   * {@link NegLogLikelihood}, the ones of a predicate for all outcomes one
+   * after the other, used during training to report model accuracy.
+   *
+   * @param parameters
+   *          Model parameters, the one of outcome oi of predicate pi at
+   *          pi * nOutcomes + oi
+   * @return Normalized probabilities for the outcomes given the context.
+   */
+  static double[] evalByPredicate(int[] context, float[] values, double[] probs,
+      int nOutcomes, double[] parameters) {
+
+    for (int i = 0; i < context.length; i++) {
+      int offset = context[i] * nOutcomes;
+      double predValue = values != null ? values[i] : 1.0;
+      for (int oi = 0; oi < nOutcomes; oi++) {
+        probs[oi] += predValue * parameters[offset + oi];
+      }
+    }
+
+    double logSumExp = ArrayMath.logSumOfExps(probs);
+
+    for (int oi = 0; oi < nOutcomes; oi++) {
+      probs[oi] = Math.exp(probs[oi] - logSumExp);
+    }
+
+    return probs;
+  }
 }
@@ -179,7 +179,14 @@ public class QNTrainer extends AbstractEventTrainer {
         l1Cost, l2Cost, iterations, m, maxFctEval, printMessages);
     minimizer.setEvaluator(new ModelEvaluator(indexer));
 
-    double[] parameters = minimizer.minimize(objectiveFunction);
+    double[] parameters;
+    try {
+      parameters = minimizer.minimize(objectiveFunction);
+    } finally {
+      if (objectiveFunction instanceof ParallelNegLogLikelihood) {
+        ((ParallelNegLogLikelihood) objectiveFunction).close();
+      }
+    }
 
     // Construct model with trained parameters
     String[] predLabels = indexer.getPredLabels();
@@ -193,7 +200,8 @@ public class QNTrainer extends AbstractEventTrainer {
       List<Integer> outcomePattern = new ArrayList<>(nOutcomes);
       List<Double> alpha = new ArrayList<>(nOutcomes);
       for (int oi = 0; oi < nOutcomes; oi++) {
-        double val = parameters[oi * nPredLabels + ci];
+        // the parameters of a predicate are stored together, see NegLogLikelihood
+        double val = parameters[ci * nOutcomes + oi];
         outcomePattern.add(oi);
         alpha.add(val);
       }
@@ -226,7 +234,6 @@ public class QNTrainer extends AbstractEventTrainer {
       int[] nEventsSeen = indexer.getNumTimesEventsSeen();
       int[] outcomeList = indexer.getOutcomeList();
       int nOutcomes     = indexer.getOutcomeLabels().length;
-      int nPredLabels   = indexer.getPredLabels().length;
 
       int nCorrect     = 0;
       int nTotalEvents = 0;
@@ -236,7 +243,7 @@ public class QNTrainer extends AbstractEventTrainer {
         float[] value  = values == null ? null : values[ei];
 
         double[] probs = new double[nOutcomes];
-        QNModel.eval(context, value, probs, nOutcomes, nPredLabels, parameters);
+        QNModel.evalByPredicate(context, value, probs, nOutcomes, parameters);
         int outcome = ArrayMath.maxIdx(probs);
         if (outcome == outcomeList[ei]) {
           nCorrect += nEventsSeen[ei];
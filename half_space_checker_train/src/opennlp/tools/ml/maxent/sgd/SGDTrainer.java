@@ -0,0 +1,437 @@
+package opennlp.tools.ml.maxent.sgd;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import opennlp.tools.ml.AbstractEventTrainer;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.ml.model.DataIndexer;
+import opennlp.tools.util.TrainingParameters;
+
+/**
+ * Maxent model trainer using stochastic gradient descent on mini-batches of
+ * events, with AdaGrad step sizes by default.
+ * <p>
+ * The threads share the parameters and update them without locks, as
+ * described in: HOGWILD!: A Lock-Free Approach to Parallelizing Stochastic
+ * Gradient Descent. Niu, Recht, Re and Wright, NIPS 2011. The events of a
+ * context only touch the parameters of its predicates, so threads seldom
+ * update the same parameter at once, and an update which is lost now and
+ * then does not keep the training from converging. Every epoch the events
+ * are shuffled and split into one range for every thread, the epochs are
+ * separated by waiting for all threads, so the parameters of the trained
+ * model are the ones all threads wrote.
+ * <p>
+ * The parameters are stored like the ones of the quasi-Newton trainer, the
+ * ones of a predicate together, and the trained model is a {@link GISModel}
+ * with a parameter for every outcome of every predicate. Like the other
+ * maxent trainers it is given the events merged, every unique event counts
+ * as often as it was seen, so an epoch has as many steps as there are
+ * unique events, which are far fewer than events for tokenizer data.
+ */
+public class SGDTrainer extends AbstractEventTrainer {
+
+  public static final String MAXENT_SGD_VALUE = "MAXENT_SGD";
+
+  public static final String LEARNING_RATE_PARAM = "LearningRate";
+  public static final double LEARNING_RATE_DEFAULT = 0.2;
+
+  public static final String ADAGRAD_PARAM = "AdaGrad";
+  public static final boolean ADAGRAD_DEFAULT = true;
+
+  public static final String BATCH_SIZE_PARAM = "BatchSize";
+  public static final int BATCH_SIZE_DEFAULT = 8;
+
+  public static final String L2COST_PARAM = "L2Cost";
+  public static final double L2COST_DEFAULT = 0.1;
+
+  // Relative change of the log-likelihood of an epoch below which training stops
+  public static final String TOLERANCE_PARAM = "Tolerance";
+  public static final double TOLERANCE_DEFAULT = 0.0001;
+
+  public static final String SEED_PARAM = "Seed";
+  public static final int SEED_DEFAULT = 42;
+
+  private int threads = 1;
+  private double learningRate = LEARNING_RATE_DEFAULT;
+  private boolean adaGrad = ADAGRAD_DEFAULT;
+  private int batchSize = BATCH_SIZE_DEFAULT;
+  private double l2Cost = L2COST_DEFAULT;
+  private double tolerance = TOLERANCE_DEFAULT;
+  private int seed = SEED_DEFAULT;
+
+  public SGDTrainer() {
+  }
+
+  @Override
+  public void init(TrainingParameters trainingParameters, Map<String, String> reportMap) {
+    super.init(trainingParameters, reportMap);
+    threads = trainingParameters.getIntParameter(TrainingParameters.THREADS_PARAM, 1);
+    learningRate = trainingParameters.getDoubleParameter(LEARNING_RATE_PARAM, LEARNING_RATE_DEFAULT);
+    adaGrad = trainingParameters.getBooleanParameter(ADAGRAD_PARAM, ADAGRAD_DEFAULT);
+    batchSize = trainingParameters.getIntParameter(BATCH_SIZE_PARAM, BATCH_SIZE_DEFAULT);
+    l2Cost = trainingParameters.getDoubleParameter(L2COST_PARAM, L2COST_DEFAULT);
+    tolerance = trainingParameters.getDoubleParameter(TOLERANCE_PARAM, TOLERANCE_DEFAULT);
+    seed = trainingParameters.getIntParameter(SEED_PARAM, SEED_DEFAULT);
+  }
+
+  @Override
+  @Deprecated
+  public void init(Map<String, String> trainParams, Map<String, String> reportMap) {
+    init(new TrainingParameters(trainParams), reportMap);
+  }
+
+  @Override
+  public boolean isValid() {
+
+    if (!super.isValid()) {
+      return false;
+    }
+
+    String algorithmName = getAlgorithm();
+    if (algorithmName != null && !(MAXENT_SGD_VALUE.equals(algorithmName))) {
+      return false;
+    }
+
+    return threads >= 1 && learningRate > 0 && batchSize >= 1 && l2Cost >= 0 && tolerance >= 0;
+  }
+
+  @Override
+  public boolean isSortAndMerge() {
+    return true;
+  }
+
+  @Override
+  public AbstractModel doTrain(DataIndexer indexer) throws IOException {
+    return trainModel(getIterations(), indexer);
+  }
+
+  public GISModel trainModel(int epochs, DataIndexer indexer) {
+
+    int[][] contexts = indexer.getContexts();
+    int numEvents = contexts.length;
+    String[] predLabels = indexer.getPredLabels();
+    String[] outcomeNames = indexer.getOutcomeLabels();
+    int numPreds = predLabels.length;
+    int numOutcomes = outcomeNames.length;
+
+    display("\tNumber of Event Tokens: " + numEvents + "\n");
+    display("\t    Number of Outcomes: " + numOutcomes + "\n");
+    display("\t  Number of Predicates: " + numPreds + "\n");
+
+    // the regularization of a predicate is spread over its occurrences,
+    // so an epoch adds it once
+    int[] numTimesEventsSeen = indexer.getNumTimesEventsSeen();
+    double[] predRegularization = new double[numPreds];
+    for (int ei = 0; ei < numEvents; ei++) {
+      for (int pred : contexts[ei]) {
+        predRegularization[pred] += numTimesEventsSeen[ei];
+      }
+    }
+    for (int pi = 0; pi < numPreds; pi++) {
+      predRegularization[pi] = predRegularization[pi] > 0 ? 2 * l2Cost / predRegularization[pi] : 0;
+    }
+
+    Epoch epoch = new Epoch(indexer, predRegularization);
+
+    int[] order = new int[numEvents];
+    for (int ei = 0; ei < numEvents; ei++) {
+      order[ei] = ei;
+    }
+    Random random = new Random(seed);
+
+    int[] startIndex = new int[threads + 1];
+    for (int t = 0; t < threads; t++) {
+      startIndex[t + 1] = (int) ((long) numEvents * (t + 1) / threads);
+    }
+    Worker[] workers = new Worker[threads];
+    for (int t = 0; t < threads; t++) {
+      workers[t] = new Worker(epoch, order, startIndex[t], startIndex[t + 1]);
+    }
+
+    if (threads == 1) {
+      display("Computing model parameters ...\n");
+    } else {
+      display("Computing model parameters in " + threads + " threads ...\n");
+    }
+
+    // the calling thread trains on the last range
+    int poolSize = Math.max(1, threads - 1);
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+        10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread thread = new Thread(r, "sgd-trainer");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+
+    try {
+      double previousLogLikelihood = 0;
+      for (int e = 1; e <= epochs; e++) {
+        shuffle(order, random);
+        epoch.rate = adaGrad ? learningRate : learningRate / e;
+
+        trainInParallel(executor, workers);
+
+        double logLikelihood = 0;
+        double numCorrect = 0;
+        double numTotal = 0;
+        for (Worker worker : workers) {
+          logLikelihood += worker.logLikelihood;
+          numCorrect += worker.numCorrect;
+          numTotal += worker.numTotal;
+        }
+        display(e + ":  loglikelihood=" + logLikelihood + "\t" + numCorrect / numTotal + "\n");
+
+        if (e > 1 && Math.abs(logLikelihood - previousLogLikelihood)
+            <= tolerance * Math.abs(previousLogLikelihood)) {
+          display("Stopping: change in loglikelihood is below the tolerance.\n");
+          break;
+        }
+        previousLogLikelihood = logLikelihood;
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Context[] params = new Context[numPreds];
+    int[] allOutcomes = new int[numOutcomes];
+    for (int oi = 0; oi < numOutcomes; oi++) {
+      allOutcomes[oi] = oi;
+    }
+    for (int pi = 0; pi < numPreds; pi++) {
+      // the parameters of a predicate are stored together, see Epoch
+      params[pi] = new Context(allOutcomes, Arrays.copyOfRange(epoch.parameters,
+          pi * numOutcomes, (pi + 1) * numOutcomes));
+    }
+
+    return new GISModel(params, predLabels, outcomeNames);
+  }
+
+  private static void shuffle(int[] order, Random random) {
+    for (int i = order.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+  }
+
+  private static void trainInParallel(ExecutorService executor, Worker[] workers) {
+    List<Future<?>> futures = new ArrayList<>(workers.length - 1);
+    for (int t = 0; t < workers.length - 1; t++) {
+      futures.add(executor.submit(workers[t]));
+    }
+
+    workers[workers.length - 1].run();
+
+    try {
+      for (Future<?> future : futures)
+        future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while training in parallel", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * The state shared by all threads: the events, and the parameters and
+   * squared gradients, which are read and written without locks.
+   */
+  private final class Epoch {
+
+    final int[][] contexts;
+    final float[][] values;
+    final int[] outcomeList;
+    final int[] numTimesEventsSeen;
+    final int numOutcomes;
+    final double[] predRegularization;
+
+    // parameter of outcome oi of predicate pi at pi * numOutcomes + oi
+    final double[] parameters;
+    // the sums of the squared gradients of the parameters, for AdaGrad
+    final double[] squaredGradients;
+
+    // the learning rate of the current epoch
+    double rate;
+
+    Epoch(DataIndexer indexer, double[] predRegularization) {
+      contexts = indexer.getContexts();
+      values = indexer.getValues();
+      outcomeList = indexer.getOutcomeList();
+      numTimesEventsSeen = indexer.getNumTimesEventsSeen();
+      numOutcomes = indexer.getOutcomeLabels().length;
+      this.predRegularization = predRegularization;
+      parameters = new double[predRegularization.length * numOutcomes];
+      squaredGradients = adaGrad ? new double[parameters.length] : null;
+    }
+  }
+
+  /**
+   * Trains on one range of the shuffled events. The gradient of a
+   * mini-batch is summed in buffers of the worker, only for the predicates
+   * the batch has, and then added to the shared parameters.
+   */
+  private final class Worker implements Runnable {
+
+    private final Epoch epoch;
+    private final int[] order;
+    private final int start;
+    private final int end;
+
+    private final double[] probs;
+    // the slot of every predicate in the gradient, -1 if the batch does not have it
+    private final int[] slots;
+    private int[] batchPreds = new int[64];
+    private double[] gradient;
+    private int numBatchPreds;
+
+    double logLikelihood;
+    double numCorrect;
+    double numTotal;
+
+    Worker(Epoch epoch, int[] order, int start, int end) {
+      this.epoch = epoch;
+      this.order = order;
+      this.start = start;
+      this.end = end;
+      probs = new double[epoch.numOutcomes];
+      slots = new int[epoch.predRegularization.length];
+      Arrays.fill(slots, -1);
+      gradient = new double[batchPreds.length * epoch.numOutcomes];
+    }
+
+    @Override
+    public void run() {
+      logLikelihood = 0;
+      numCorrect = 0;
+      numTotal = 0;
+      for (int batchStart = start; batchStart < end; batchStart += batchSize) {
+        int batchEnd = Math.min(end, batchStart + batchSize);
+        for (int i = batchStart; i < batchEnd; i++) {
+          addGradient(order[i]);
+        }
+        update(batchEnd - batchStart);
+      }
+    }
+
+    /**
+     * Adds the gradient of the negative log-likelihood of the event, computed
+     * with the parameters as they are now, to the gradient of the batch.
+     */
+    private void addGradient(int ei) {
+      int numOutcomes = epoch.numOutcomes;
+      double[] parameters = epoch.parameters;
+      int[] context = epoch.contexts[ei];
+      float[] values = epoch.values == null ? null : epoch.values[ei];
+
+      Arrays.fill(probs, 0);
+      for (int ci = 0; ci < context.length; ci++) {
+        double value = values == null ? 1 : values[ci];
+        int offset = context[ci] * numOutcomes;
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          probs[oi] += parameters[offset + oi] * value;
+        }
+      }
+
+      double max = probs[0];
+      int best = 0;
+      for (int oi = 1; oi < numOutcomes; oi++) {
+        if (probs[oi] > max) {
+          max = probs[oi];
+          best = oi;
+        }
+      }
+      double sum = 0;
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        probs[oi] = Math.exp(probs[oi] - max);
+        sum += probs[oi];
+      }
+
+      int outcome = epoch.outcomeList[ei];
+      int seen = epoch.numTimesEventsSeen[ei];
+      logLikelihood += seen * (Math.log(probs[outcome] / sum));
+      numTotal += seen;
+      if (best == outcome) {
+        numCorrect += seen;
+      }
+
+      for (int oi = 0; oi < numOutcomes; oi++) {
+        probs[oi] = seen * (probs[oi] / sum - (oi == outcome ? 1 : 0));
+      }
+      for (int ci = 0; ci < context.length; ci++) {
+        int pred = context[ci];
+        double value = values == null ? 1 : values[ci];
+        int offset = slot(pred) * numOutcomes;
+        int paramOffset = pred * numOutcomes;
+        double regularization = seen * epoch.predRegularization[pred];
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          gradient[offset + oi] += probs[oi] * value
+              + regularization * parameters[paramOffset + oi];
+        }
+      }
+    }
+
+    private int slot(int pred) {
+      int slot = slots[pred];
+      if (slot < 0) {
+        slot = numBatchPreds++;
+        if (slot == batchPreds.length) {
+          batchPreds = Arrays.copyOf(batchPreds, slot * 2);
+          gradient = Arrays.copyOf(gradient, slot * 2 * epoch.numOutcomes);
+        }
+        batchPreds[slot] = pred;
+        slots[pred] = slot;
+      }
+      return slot;
+    }
+
+    /**
+     * Adds the step of the gradient of the batch to the shared parameters,
+     * and clears the gradient.
+     */
+    private void update(int numBatchEvents) {
+      int numOutcomes = epoch.numOutcomes;
+      double[] parameters = epoch.parameters;
+      double[] squaredGradients = epoch.squaredGradients;
+      double rate = epoch.rate;
+      double scale = 1.0 / numBatchEvents;
+
+      for (int slot = 0; slot < numBatchPreds; slot++) {
+        int pred = batchPreds[slot];
+        slots[pred] = -1;
+        int offset = slot * numOutcomes;
+        int paramOffset = pred * numOutcomes;
+        for (int oi = 0; oi < numOutcomes; oi++) {
+          double g = gradient[offset + oi] * scale;
+          gradient[offset + oi] = 0;
+          int pi = paramOffset + oi;
+          if (squaredGradients != null) {
+            double squared = squaredGradients[pi] + g * g;
+            squaredGradients[pi] = squared;
+            if (squared > 0) {
+              parameters[pi] -= rate * g / Math.sqrt(squared);
+            }
+          } else {
+            parameters[pi] -= rate * g;
+          }
+        }
+      }
+      numBatchPreds = 0;
+    }
+  }
+}
@@ -0,0 +1,734 @@
+package opennlp.tools.ml.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.util.InsufficientTrainingDataException;
+import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.TrainingParameters;
+
+/**
+ * An indexer which keeps the events on disk instead of on the heap, for
+ * training data much larger than the memory.
+ * <p>
+ * The events are read once and written to a temporary file in a compact
+ * binary form: the outcome, the number of predicates and the predicates as
+ * integer ids, every number as a variable length integer. The predicate
+ * strings are only held once, in the map from predicates to ids. After the
+ * cutoff is applied the file is read back through memory mapped windows and
+ * the events are collected in a buffer of a fixed size, which is sorted,
+ * merged and spilled to a run file whenever it is full. The runs are then
+ * merged into the unique events, in the order and with the counts
+ * {@link #sortAndMerge(List, boolean)} gives them.
+ * <p>
+ * The heap used while indexing is therefore bounded by the buffer, the
+ * predicate map and the unique events the trainers need, whatever the number
+ * of events. The size of the buffer in megabytes is set with
+ * {@link #BUFFER_SIZE_PARAM} and the directory of the temporary files with
+ * {@link #TEMP_DIR_PARAM}.
+ * <p>
+ * With more than one {@link TrainingParameters#THREADS_PARAM thread} the
+ * predicates of the events are hashed and counted by several threads, in
+ * batches which are merged in the order of the events, so the result is
+ * the same as with one thread.
+ */
+public class DiskDataIndexer extends AbstractDataIndexer {
+
+  public static final String BUFFER_SIZE_PARAM = "IndexerBufferSize";
+  public static final int BUFFER_SIZE_DEFAULT = 16;
+
+  public static final String TEMP_DIR_PARAM = "IndexerTempDir";
+
+  private File tempDir;
+
+  public DiskDataIndexer() {}
+
+  @Override
+  public void index(ObjectStream<Event> eventStream) throws IOException {
+    int cutoff = trainingParameters.getIntParameter(CUTOFF_PARAM, CUTOFF_DEFAULT);
+    boolean sort = trainingParameters.getBooleanParameter(SORT_PARAM, SORT_DEFAULT);
+    int bufferSize = trainingParameters.getIntParameter(BUFFER_SIZE_PARAM, BUFFER_SIZE_DEFAULT);
+    String tempDirName = trainingParameters.getStringParameter(TEMP_DIR_PARAM, null);
+    tempDir = tempDirName != null ? new File(tempDirName) : null;
+    int threads = trainingParameters.getIntParameter(TrainingParameters.THREADS_PARAM, 1);
+
+    display("Indexing events using cutoff of " + cutoff + "\n\n");
+
+    display("\tComputing event counts...  ");
+    Map<String, Integer> predicateIds = new HashMap<>();
+    Map<String, Integer> outcomeIds = new HashMap<>();
+    IntList counts = new IntList();
+    File events = File.createTempFile("events", ".bin", tempDir);
+    List<File> runs = new ArrayList<>();
+    try {
+      int eventCount;
+      try (VarIntOutput out = new VarIntOutput(events)) {
+        eventCount = threads > 1
+            ? writeEvents(eventStream, out, predicateIds, outcomeIds, counts, threads)
+            : writeEvents(eventStream, out, predicateIds, outcomeIds, counts);
+      }
+      display("done. " + eventCount + " events\n");
+
+      // the ids of the predicates which pass the cutoff, in the order they occurred first
+      String[] predicates = toIndexedStringArray(predicateIds);
+      predicateIds = null;
+      int[] ids = new int[predicates.length];
+      IntList keptCounts = new IntList();
+      List<String> keptPredicates = new ArrayList<>();
+      for (int pi = 0; pi < predicates.length; pi++) {
+        if (counts.get(pi) >= cutoff) {
+          ids[pi] = keptPredicates.size();
+          keptPredicates.add(predicates[pi]);
+          keptCounts.add(counts.get(pi));
+        }
+        else {
+          ids[pi] = -1;
+        }
+      }
+      predCounts = keptCounts.toArray();
+      predLabels = keptPredicates.toArray(new String[keptPredicates.size()]);
+      outcomeLabels = toIndexedStringArray(outcomeIds);
+
+      display("\tIndexing...  ");
+      EventBuffer buffer = new EventBuffer(Math.max(1, bufferSize) * (1 << 18));
+      List<int[]> uniqueContexts = new ArrayList<>();
+      IntList uniqueOutcomes = new IntList();
+      IntList uniqueSeen = new IntList();
+      numEvents = 0;
+      int[] context = new int[16];
+      try (MappedInput in = new MappedInput(events)) {
+        while (in.hasMore()) {
+          int outcome = in.readVarInt();
+          int length = in.readVarInt();
+          if (length > context.length) {
+            context = new int[Math.max(length, context.length * 2)];
+          }
+          int kept = 0;
+          for (int ci = 0; ci < length; ci++) {
+            int id = ids[in.readVarInt()];
+            if (id >= 0) {
+              context[kept++] = id;
+            }
+          }
+          // drop events with no active features
+          if (kept == 0) {
+            display("Dropped event " + outcomeLabels[outcome] + "\n");
+            continue;
+          }
+          numEvents++;
+          if (!sort) {
+            uniqueContexts.add(Arrays.copyOf(context, kept));
+            uniqueOutcomes.add(outcome);
+            uniqueSeen.add(1);
+          }
+          else if (!buffer.add(outcome, context, kept)) {
+            runs.add(buffer.spill());
+            buffer.add(outcome, context, kept);
+          }
+        }
+      }
+      display("done.\n");
+
+      if (sort) {
+        display("Sorting and merging events... ");
+        EventSink sink = (outcome, seen, c, offset, length) -> {
+          uniqueContexts.add(Arrays.copyOfRange(c, offset, offset + length));
+          uniqueOutcomes.add(outcome);
+          uniqueSeen.add(seen);
+        };
+        if (runs.isEmpty()) {
+          buffer.sortAndMerge(sink);
+        }
+        else {
+          if (buffer.size() > 0) {
+            runs.add(buffer.spill());
+          }
+          buffer = null;
+          mergeRuns(runs, sink);
+        }
+      }
+      else {
+        display("Collecting events... ");
+      }
+
+      int numUniqueEvents = uniqueContexts.size();
+      if (numUniqueEvents == 0) {
+        throw new InsufficientTrainingDataException("Insufficient training data to create model.");
+      }
+      if (sort) display("done. Reduced " + numEvents + " events to " + numUniqueEvents + ".\n");
+
+      contexts = uniqueContexts.toArray(new int[numUniqueEvents][]);
+      outcomeList = uniqueOutcomes.toArray();
+      numTimesEventsSeen = uniqueSeen.toArray();
+      display("Done indexing.\n");
+    }
+    finally {
+      delete(events);
+      for (File run : runs) {
+        delete(run);
+      }
+    }
+  }
+
+  /**
+   * Writes the events to the file with the ids of their predicates and
+   * outcomes and counts the predicates.
+   *
+   * @return the number of events
+   */
+  private int writeEvents(ObjectStream<Event> eventStream, VarIntOutput out,
+      Map<String, Integer> predicateIds, Map<String, Integer> outcomeIds, IntList counts)
+      throws IOException {
+    int eventCount = 0;
+    Event ev;
+    while ((ev = eventStream.read()) != null) {
+      eventCount++;
+      Integer outcome = outcomeIds.get(ev.getOutcome());
+      if (outcome == null) {
+        outcome = outcomeIds.size();
+        outcomeIds.put(ev.getOutcome(), outcome);
+      }
+      String[] context = ev.getContext();
+      out.writeVarInt(outcome);
+      out.writeVarInt(context.length);
+      for (String predicate : context) {
+        Integer id = predicateIds.get(predicate);
+        if (id == null) {
+          id = predicateIds.size();
+          predicateIds.put(predicate, id);
+          counts.add(0);
+        }
+        counts.increment(id);
+        out.writeVarInt(id);
+      }
+    }
+    return eventCount;
+  }
+
+  /**
+   * Writes the events like {@link #writeEvents(ObjectStream, VarIntOutput, Map, Map, IntList)},
+   * but hashes and counts the predicates of batches of events with several
+   * threads. Every batch numbers its predicates and outcomes in the order
+   * they occur in it, and the batches are merged in the order of the events,
+   * so the ids, the counts and the file are the same as with one thread.
+   */
+  private int writeEvents(ObjectStream<Event> eventStream, VarIntOutput out,
+      Map<String, Integer> predicateIds, Map<String, Integer> outcomeIds, IntList counts,
+      int threads) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    Deque<Future<EventBatch>> batches = new ArrayDeque<>();
+    int eventCount = 0;
+    try {
+      boolean done = false;
+      while (!done || !batches.isEmpty()) {
+        // two batches a thread, so the threads work while a batch is merged
+        while (!done && batches.size() < 2 * threads) {
+          List<Event> events = new ArrayList<>(EventBatch.SIZE);
+          Event ev;
+          while (events.size() < EventBatch.SIZE && (ev = eventStream.read()) != null) {
+            events.add(ev);
+          }
+          done = events.size() < EventBatch.SIZE;
+          eventCount += events.size();
+          if (!events.isEmpty()) {
+            batches.add(executor.submit(() -> new EventBatch(events)));
+          }
+        }
+        if (!batches.isEmpty()) {
+          get(batches.poll()).writeTo(out, predicateIds, outcomeIds, counts);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return eventCount;
+  }
+
+  private static EventBatch get(Future<EventBatch> batch) throws IOException {
+    try {
+      return batch.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while indexing events", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Merges the sorted runs into the unique events, adding up the counts of
+   * the events which occur in several runs.
+   */
+  private void mergeRuns(List<File> runs, EventSink sink) throws IOException {
+    PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(),
+        (r1, r2) -> compare(r1.outcome, r1.context, 0, r1.length,
+            r2.outcome, r2.context, 0, r2.length));
+    List<RunReader> readers = new ArrayList<>(runs.size());
+    try {
+      for (File run : runs) {
+        RunReader reader = new RunReader(run);
+        readers.add(reader);
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+
+      int outcome = -1;
+      int seen = 0;
+      int[] context = new int[16];
+      int length = 0;
+      while (!queue.isEmpty()) {
+        RunReader reader = queue.poll();
+        if (seen > 0 && compare(outcome, context, 0, length,
+            reader.outcome, reader.context, 0, reader.length) == 0) {
+          seen += reader.seen;
+        }
+        else {
+          if (seen > 0) {
+            sink.event(outcome, seen, context, 0, length);
+          }
+          outcome = reader.outcome;
+          seen = reader.seen;
+          length = reader.length;
+          if (length > context.length) {
+            context = new int[Math.max(length, context.length * 2)];
+          }
+          System.arraycopy(reader.context, 0, context, 0, length);
+        }
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      }
+      if (seen > 0) {
+        sink.event(outcome, seen, context, 0, length);
+      }
+    }
+    finally {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Compares two events like {@link ComparableEvent#compareTo(ComparableEvent)}:
+   * by outcome, then by predicates and then by length.
+   */
+  private static int compare(int outcome1, int[] c1, int offset1, int length1,
+      int outcome2, int[] c2, int offset2, int length2) {
+    if (outcome1 != outcome2) {
+      return outcome1 < outcome2 ? -1 : 1;
+    }
+    int smallerLength = Math.min(length1, length2);
+    for (int i = 0; i < smallerLength; i++) {
+      int p1 = c1[offset1 + i];
+      int p2 = c2[offset2 + i];
+      if (p1 != p2) {
+        return p1 < p2 ? -1 : 1;
+      }
+    }
+    return Integer.compare(length1, length2);
+  }
+
+  private static void delete(File file) {
+    // a file which is still mapped can not be deleted on every platform
+    if (file.exists() && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  private interface EventSink {
+    void event(int outcome, int seen, int[] context, int offset, int length) throws IOException;
+  }
+
+  /**
+   * A batch of events with the predicates and outcomes numbered in the order
+   * they occur in the batch, and the predicates counted.
+   */
+  private static final class EventBatch {
+
+    static final int SIZE = 4096;
+
+    private final List<String> predicates = new ArrayList<>();
+    private final IntList counts = new IntList();
+    private final List<String> outcomes = new ArrayList<>();
+    /** The events as the outcome, the number of predicates and the predicates. */
+    private final IntList events = new IntList();
+
+    EventBatch(List<Event> batch) {
+      Map<String, Integer> predicateIds = new HashMap<>();
+      Map<String, Integer> outcomeIds = new HashMap<>();
+      for (Event ev : batch) {
+        Integer outcome = outcomeIds.get(ev.getOutcome());
+        if (outcome == null) {
+          outcome = outcomes.size();
+          outcomeIds.put(ev.getOutcome(), outcome);
+          outcomes.add(ev.getOutcome());
+        }
+        String[] context = ev.getContext();
+        events.add(outcome);
+        events.add(context.length);
+        for (String predicate : context) {
+          Integer id = predicateIds.get(predicate);
+          if (id == null) {
+            id = predicates.size();
+            predicateIds.put(predicate, id);
+            predicates.add(predicate);
+            counts.add(0);
+          }
+          counts.increment(id);
+          events.add(id);
+        }
+      }
+    }
+
+    /**
+     * Gives the predicates and outcomes new to the maps the next ids, adds
+     * up the counts and writes the events with these ids.
+     */
+    void writeTo(VarIntOutput out, Map<String, Integer> predicateIds,
+        Map<String, Integer> outcomeIds, IntList totalCounts) throws IOException {
+      int[] ids = new int[predicates.size()];
+      for (int pi = 0; pi < ids.length; pi++) {
+        String predicate = predicates.get(pi);
+        Integer id = predicateIds.get(predicate);
+        if (id == null) {
+          id = predicateIds.size();
+          predicateIds.put(predicate, id);
+          totalCounts.add(0);
+        }
+        totalCounts.addTo(id, counts.get(pi));
+        ids[pi] = id;
+      }
+      int[] outcomeMap = new int[outcomes.size()];
+      for (int oi = 0; oi < outcomeMap.length; oi++) {
+        String outcome = outcomes.get(oi);
+        Integer id = outcomeIds.get(outcome);
+        if (id == null) {
+          id = outcomeIds.size();
+          outcomeIds.put(outcome, id);
+        }
+        outcomeMap[oi] = id;
+      }
+      int i = 0;
+      while (i < events.size()) {
+        out.writeVarInt(outcomeMap[events.get(i)]);
+        int length = events.get(i + 1);
+        out.writeVarInt(length);
+        for (int ci = i + 2; ci < i + 2 + length; ci++) {
+          out.writeVarInt(ids[events.get(ci)]);
+        }
+        i += length + 2;
+      }
+    }
+  }
+
+  /**
+   * A growable list of primitive ints.
+   */
+  private static final class IntList {
+
+    private int[] values = new int[64];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int get(int i) {
+      return values[i];
+    }
+
+    void increment(int i) {
+      values[i]++;
+    }
+
+    void addTo(int i, int value) {
+      values[i] += value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+
+  /**
+   * The events of one run, packed one after the other into an int array as
+   * the outcome, the number of predicates and the predicates.
+   */
+  private final class EventBuffer {
+
+    private final int capacity;
+    private int[] data = new int[1 << 16];
+    private int end;
+    private int[] starts = new int[1024];
+    private int size;
+
+    EventBuffer(int capacity) {
+      this.capacity = capacity;
+    }
+
+    int size() {
+      return size;
+    }
+
+    /**
+     * @return <code>false</code> if the buffer is full, an event is always
+     *     added to an empty buffer
+     */
+    boolean add(int outcome, int[] context, int length) {
+      int required = end + length + 2;
+      if (required > data.length) {
+        if (required > capacity && size > 0) {
+          return false;
+        }
+        // grows up to the capacity, or beyond it for a single huge event
+        data = Arrays.copyOf(data, Math.max(required, (int) Math.min(capacity, data.length * 2L)));
+      }
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, size * 2);
+      }
+      starts[size++] = end;
+      data[end] = outcome;
+      data[end + 1] = length;
+      System.arraycopy(context, 0, data, end + 2, length);
+      end += length + 2;
+      return true;
+    }
+
+    /**
+     * Sorts the events and passes each distinct one to the sink with the
+     * number of times it was added.
+     */
+    void sortAndMerge(EventSink sink) throws IOException {
+      int[] order = Arrays.copyOf(starts, size);
+      mergeSort(order, new int[size], 0, size);
+      int i = 0;
+      while (i < size) {
+        int start = order[i];
+        int seen = 1;
+        while (i + seen < size && compareAt(start, order[i + seen]) == 0) {
+          seen++;
+        }
+        sink.event(data[start], seen, data, start + 2, data[start + 1]);
+        i += seen;
+      }
+    }
+
+    /**
+     * Writes the sorted and merged events to a new run file and empties the buffer.
+     */
+    File spill() throws IOException {
+      File run = File.createTempFile("events", ".run", tempDir);
+      try (VarIntOutput out = new VarIntOutput(run)) {
+        sortAndMerge((outcome, seen, context, offset, length) -> {
+          out.writeVarInt(outcome);
+          out.writeVarInt(seen);
+          out.writeVarInt(length);
+          for (int ci = offset; ci < offset + length; ci++) {
+            out.writeVarInt(context[ci]);
+          }
+        });
+      }
+      end = 0;
+      size = 0;
+      return run;
+    }
+
+    private int compareAt(int start1, int start2) {
+      return compare(data[start1], data, start1 + 2, data[start1 + 1],
+          data[start2], data, start2 + 2, data[start2 + 1]);
+    }
+
+    /**
+     * Sorts the starts of the events by the events, stable so equal events
+     * stay in the order they were added.
+     */
+    private void mergeSort(int[] order, int[] temp, int from, int to) {
+      if (to - from < 2) {
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      mergeSort(order, temp, from, middle);
+      mergeSort(order, temp, middle, to);
+      if (compareAt(order[middle - 1], order[middle]) <= 0) {
+        return;
+      }
+      System.arraycopy(order, from, temp, from, to - from);
+      int i = from;
+      int j = middle;
+      for (int k = from; k < to; k++) {
+        if (j >= to || (i < middle && compareAt(temp[i], temp[j]) <= 0)) {
+          order[k] = temp[i++];
+        }
+        else {
+          order[k] = temp[j++];
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the events of a run file one by one.
+   */
+  private static final class RunReader implements Closeable {
+
+    private final MappedInput in;
+    int outcome;
+    int seen;
+    int[] context = new int[16];
+    int length;
+
+    RunReader(File run) throws IOException {
+      in = new MappedInput(run);
+    }
+
+    boolean next() throws IOException {
+      if (!in.hasMore()) {
+        return false;
+      }
+      outcome = in.readVarInt();
+      seen = in.readVarInt();
+      length = in.readVarInt();
+      if (length > context.length) {
+        context = new int[Math.max(length, context.length * 2)];
+      }
+      for (int ci = 0; ci < length; ci++) {
+        context[ci] = in.readVarInt();
+      }
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes non-negative ints with 7 bits in every byte, the high bit set on
+   * all but the last byte of a number.
+   */
+  private static final class VarIntOutput implements Closeable {
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+
+    VarIntOutput(File file) throws IOException {
+      out = new FileOutputStream(file);
+    }
+
+    void writeVarInt(int value) throws IOException {
+      if (position + 5 > buffer.length) {
+        flush();
+      }
+      while ((value & ~0x7F) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    private void flush() throws IOException {
+      out.write(buffer, 0, position);
+      position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      }
+      finally {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the ints of a {@link VarIntOutput} through memory mapped windows
+   * of a file, so a file larger than the address space of a single mapping
+   * is read without copying it to the heap.
+   */
+  private static final class MappedInput implements Closeable {
+
+    private static final long WINDOW_SIZE = 1 << 26;
+
+    private final FileChannel channel;
+    private final long size;
+    /** The position of the current window in the file. */
+    private long windowStart;
+    private MappedByteBuffer window;
+
+    MappedInput(File file) throws IOException {
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      size = channel.size();
+      map(0);
+    }
+
+    private void map(long start) throws IOException {
+      windowStart = start;
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+    }
+
+    boolean hasMore() {
+      return windowStart + window.position() < size;
+    }
+
+    int readVarInt() throws IOException {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        if (!window.hasRemaining()) {
+          map(windowStart + window.position());
+        }
+        b = window.get();
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -22,6 +22,8 @@ import java.util.Map;
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Context;
 import opennlp.tools.ml.model.EvalParameters;
+import opennlp.tools.ml.model.EvalWorkspace;
+import opennlp.tools.ml.model.FlatParameters;
 
 /**
  * Class implementing the multinomial Naive Bayes classifier model.
@@ -88,6 +90,72 @@ public class NaiveBayesModel extends AbstractModel {
     return eval(context, null, prior, model, true);
   }
 
+  /**
+   * Evaluates the context over the {@link FlatParameters} of this model,
+   * with the same result as {@link #eval(String[], float[], double[])}. The
+   * log probabilities are summed in the workspace instead of a
+   * {@link LogProbabilities} map of boxed values.
+   */
+  @Override
+  public double[] eval(int[] context, float[] values, EvalWorkspace ws) {
+    double[] logProbs = getOutsums(ws);
+    FlatParameters params = getFlatParameters();
+    int[] offsets = params.getOffsets();
+    int[] activeOutcomes = params.getOutcomes();
+    double[] activeParameters = params.getParameters();
+    NaiveBayesEvalParameters model = (NaiveBayesEvalParameters) evalParams;
+    double[] outcomeTotals = model.getOutcomeTotals();
+    long vocabulary = model.getVocabulary();
+    int numOutcomes = outcomeTotals.length;
+
+    double value = 1;
+    for (int ci = 0; ci < context.length; ci++) {
+      if (context[ci] >= 0) {
+        int ai = offsets[context[ci]];
+        int end = offsets[context[ci] + 1];
+        if (values != null) {
+          value = values[ci];
+        }
+        for (int i = 0; i < numOutcomes && ai < end; ++i) {
+          double numerator = activeOutcomes[ai] == i ? activeParameters[ai++] * value : 0;
+          logProbs[i] += Math.log(getProbability(numerator, outcomeTotals[i], vocabulary, true));
+        }
+      }
+    }
+    double total = 0;
+    for (int i = 0; i < numOutcomes; ++i) {
+      total += outcomeTotals[i];
+    }
+    for (int i = 0; i < numOutcomes; ++i) {
+      logProbs[i] += Math.log(outcomeTotals[i] / total);
+    }
+
+    // normalized like LogProbabilities, relative to the highest one
+    double highest = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < numOutcomes; ++i) {
+      if (logProbs[i] > highest) {
+        highest = logProbs[i];
+      }
+    }
+    double sum = 0;
+    for (int i = 0; i < numOutcomes; ++i) {
+      double p = Math.exp(logProbs[i] - highest);
+      if (Double.isNaN(p)) {
+        logProbs[i] = 0;
+      }
+      else {
+        sum += p;
+        logProbs[i] = p;
+      }
+    }
+    if (sum > Double.MIN_VALUE) {
+      for (int i = 0; i < numOutcomes; ++i) {
+        logProbs[i] /= sum;
+      }
+    }
+    return logProbs;
+  }
+
   @Deprecated // visibility will be reduced in 1.8.1
   public static double[] eval(int[] context, float[] values, double[] prior,
                               EvalParameters model, boolean normalize) {
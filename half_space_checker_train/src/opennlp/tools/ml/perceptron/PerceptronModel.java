@@ -22,6 +22,8 @@ import java.util.Map;
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Context;
 import opennlp.tools.ml.model.EvalParameters;
+import opennlp.tools.ml.model.EvalWorkspace;
+import opennlp.tools.ml.model.FlatParameters;
 
 public class PerceptronModel extends AbstractModel {
 
@@ -62,6 +64,26 @@ public class PerceptronModel extends AbstractModel {
     return eval(scontexts,values,outsums,evalParams,true);
   }
 
+  /**
+   * Evaluates the context over the {@link FlatParameters} of this model,
+   * with the same result as {@link #eval(String[], float[], double[])}.
+   */
+  @Override
+  public double[] eval(int[] context, float[] values, EvalWorkspace ws) {
+    double[] outsums = getOutsums(ws);
+    FlatParameters params = getFlatParameters();
+    double value = 1;
+    for (int ci = 0; ci < context.length; ci++) {
+      if (context[ci] >= 0) {
+        if (values != null) {
+          value = values[ci];
+        }
+        params.addTo(context[ci], value, outsums);
+      }
+    }
+    return normalize(outsums, getNumOutcomes());
+  }
+
   public static double[] eval(int[] context, double[] prior, EvalParameters model) {
     return eval(context,null,prior,model,true);
   }
@@ -88,24 +110,27 @@ public class PerceptronModel extends AbstractModel {
       }
     }
     if (normalize) {
-      int numOutcomes = model.getNumOutcomes();
-
-      double maxPrior = 1;
+      normalize(prior, model.getNumOutcomes());
+    }
+    return prior;
+  }
 
-      for (int oid = 0; oid < numOutcomes; oid++) {
-        if (maxPrior < Math.abs(prior[oid]))
-          maxPrior = Math.abs(prior[oid]);
-      }
+  private static double[] normalize(double[] prior, int numOutcomes) {
+    double maxPrior = 1;
 
-      double normal = 0.0;
-      for (int oid = 0; oid < numOutcomes; oid++) {
-        prior[oid] = Math.exp(prior[oid] / maxPrior);
-        normal += prior[oid];
-      }
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      if (maxPrior < Math.abs(prior[oid]))
+        maxPrior = Math.abs(prior[oid]);
+    }
 
-      for (int oid = 0; oid < numOutcomes; oid++)
-        prior[oid] /= normal;
+    double normal = 0.0;
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      prior[oid] = Math.exp(prior[oid] / maxPrior);
+      normal += prior[oid];
     }
+
+    for (int oid = 0; oid < numOutcomes; oid++)
+      prior[oid] /= normal;
     return prior;
   }
 }
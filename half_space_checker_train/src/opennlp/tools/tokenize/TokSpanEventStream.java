@@ -29,6 +29,7 @@ import opennlp.tools.ml.model.Event;
 import opennlp.tools.tokenize.lang.Factory;
 import opennlp.tools.util.AbstractEventStream;
 import opennlp.tools.util.ObjectStream;
+import opennlp.tools.util.ParallelEventStream;
 import opennlp.tools.util.Span;
 
 /**
@@ -91,6 +92,23 @@ public class TokSpanEventStream extends AbstractEventStream<TokenSample> {
     this(tokenSamples, skipAlphaNumerics, new DefaultTokenContextGenerator());
   }
 
+  /**
+   * Creates the events for training a tokenizer from the samples. With more
+   * than one thread the events are created by a {@link ParallelEventStream},
+   * which returns the same events in the same order.
+   */
+  static ObjectStream<Event> create(ObjectStream<TokenSample> samples,
+      TokenizerFactory factory, int threads) {
+    if (threads > 1) {
+      return new ParallelEventStream<>(samples, () -> new TokSpanEventStream(null,
+          factory.isUseAlphaNumericOptmization(),
+          factory.getAlphaNumericPattern(), factory.getContextGenerator()), threads);
+    }
+    return new TokSpanEventStream(samples,
+        factory.isUseAlphaNumericOptmization(),
+        factory.getAlphaNumericPattern(), factory.getContextGenerator());
+  }
+
   /**
    * Adds training events to the event stream for each of the specified tokens.
    *
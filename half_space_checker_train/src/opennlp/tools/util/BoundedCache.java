@@ -0,0 +1,221 @@
+package opennlp.tools.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A size-bounded, thread-safe, least recently used cache.
+ * <p>
+ * The entries are spread over a number of independently locked segments, each
+ * of which evicts its own least recently used entry once it is full, so
+ * threads working on different keys rarely wait for each other. Hits and
+ * misses are counted for every lookup.
+ */
+public class BoundedCache<K,V> {
+
+  private static final int MAX_SEGMENTS = 16;
+
+  private final Segment<K,V>[] segments;
+  private final int segmentShift;
+  private final int capacity;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a cache which holds at most {@code capacity} entries.
+   *
+   * @param capacity the maximum number of entries, must be positive
+   */
+  public BoundedCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+
+    int segmentCount = 1;
+    while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * 64 <= capacity) {
+      segmentCount *= 2;
+    }
+
+    this.capacity = capacity;
+    this.segmentShift = 32 - Integer.numberOfTrailingZeros(segmentCount);
+    this.segments = newSegments(segmentCount);
+    for (int i = 0; i < segmentCount; i++) {
+      // spread the remainder so the segment capacities add up to capacity
+      segments[i] = new Segment<>(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K,V> Segment<K,V>[] newSegments(int count) {
+    return (Segment<K,V>[]) new Segment<?,?>[count];
+  }
+
+  private Segment<K,V> segmentFor(Object key) {
+    if (segments.length == 1) {
+      return segments[0];
+    }
+    // the high bits of a multiplicative hash, as the map of a segment uses
+    // the low bits and would otherwise leave most of its buckets empty
+    return segments[(key.hashCode() * 0x9E3779B9) >>> segmentShift];
+  }
+
+  /**
+   * Retrieves the value cached for the key.
+   *
+   * @return the cached value or {@code null} if there is none
+   */
+  public V get(K key) {
+    Segment<K,V> segment = segmentFor(key);
+    V value;
+    synchronized (segment) {
+      value = segment.get(key);
+    }
+    if (value != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return value;
+  }
+
+  /**
+   * Retrieves the value cached for the key like {@link #get(Object)}, without
+   * counting a lookup, for a caller which checks again a key it has just
+   * missed.
+   *
+   * @return the cached value or {@code null} if there is none
+   */
+  public V peek(K key) {
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.get(key);
+    }
+  }
+
+  /**
+   * Retrieves the value cached for the key, computing and caching it first if
+   * there is none. The loader runs outside of any lock, so two threads which
+   * miss on the same key at the same time may both compute it; the value
+   * stored first is the one returned to both.
+   *
+   * @param loader computes the value for a key, must not return {@code null}
+   */
+  public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+    V value = get(key);
+    if (value == null) {
+      value = putIfAbsent(key, loader.apply(key));
+    }
+    return value;
+  }
+
+  /**
+   * Caches the value unless the key is already present, without counting a
+   * lookup.
+   *
+   * @return the value now cached for the key
+   */
+  public V putIfAbsent(K key, V value) {
+    if (value == null) {
+      throw new NullPointerException("value must not be null");
+    }
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      V present = segment.putIfAbsent(key, value);
+      return present != null ? present : value;
+    }
+  }
+
+  /**
+   * Caches the value, replacing the one already cached for the key.
+   */
+  public void put(K key, V value) {
+    if (value == null) {
+      throw new NullPointerException("value must not be null");
+    }
+    Segment<K,V> segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  /**
+   * Removes all entries, the hit and miss counters are kept.
+   */
+  public void clear() {
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the number of cached entries
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K,V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the maximum number of cached entries
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of lookups which found a cached value
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of lookups which did not find a cached value
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * Resets the hit and miss counters to zero.
+   */
+  public void resetStats() {
+    hits.reset();
+    misses.reset();
+  }
+
+  @Override
+  public String toString() {
+    long hits = hits();
+    long lookups = hits + misses();
+    return "size=" + size() + "/" + capacity + " hits=" + hits + " misses=" + (lookups - hits)
+        + " hitRate=" + (lookups == 0 ? 0d : (double) hits / lookups);
+  }
+
+  private static class Segment<K,V> extends LinkedHashMap<K,V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+
+    Segment(int capacity) {
+      super(16, 0.75f, true);
+      this.capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K,V> eldest) {
+      return size() > capacity;
+    }
+  }
+}
@@ -28,6 +28,8 @@ public class Cache<K,V> extends LinkedHashMap<K,V> {
   private int capacity;
 
   public Cache(final int capacity) {
+    // access order, so the least recently used entry is evicted
+    super(16, 0.75f, true);
     this.capacity = capacity;
   }
 
@@ -54,7 +54,8 @@ public abstract class AbstractDataIndexer implements DataIndexer {
         AbstractTrainer.VERBOSE_DEFAULT);
   }
 
-  private int numEvents;
+  /** The number of events which were not dropped. */
+  protected int numEvents;
   /** The integer contexts associated with each unique event. */
   protected int[][] contexts;
   /** The integer outcome associated with each unique event. */
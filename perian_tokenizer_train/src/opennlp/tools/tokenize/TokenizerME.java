@@ -453,9 +453,8 @@ public class TokenizerME extends AbstractTokenizer{
 
 	    Map<String, String> manifestInfoEntries = new HashMap<>();
 
-	    ObjectStream<Event> eventStream = new TokSpanEventStream(samples,
-	        factory.isUseAlphaNumericOptmization(),
-	        factory.getAlphaNumericPattern(), factory.getContextGenerator());
+	    ObjectStream<Event> eventStream = TokSpanEventStream.create(samples, factory,
+	        mlParams.getIntParameter(TrainingParameters.THREADS_PARAM, 1));
 
 	    EventTrainer trainer = TrainerFactory.getEventTrainer(
 	        mlParams, manifestInfoEntries);
@@ -0,0 +1,185 @@
+package opennlp.tools.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import opennlp.tools.ml.model.Event;
+
+/**
+ * An event stream which creates the events of its samples with several
+ * threads. The samples are read in batches, the events of a batch are
+ * created by one of the threads with its own {@link AbstractEventStream},
+ * and the events are returned in the order of their samples, so the stream
+ * returns exactly the events the event stream would return on its own.
+ * <p>
+ * The event streams are only used to create events, through
+ * {@link AbstractEventStream#createEvents(Object)}, and are never read.
+ * Every thread has its own, so they need not be thread-safe.
+ */
+public class ParallelEventStream<T> implements ObjectStream<Event> {
+
+  public static final int BATCH_SIZE_DEFAULT = 256;
+
+  private final ObjectStream<T> samples;
+  private final int batchSize;
+  private final ThreadPoolExecutor executor;
+  /** The event streams which are not used by a thread at the moment. */
+  private final Deque<AbstractEventStream<T>> eventStreams = new ArrayDeque<>();
+  /** The batches in the order of their samples. */
+  private final Deque<Future<List<Event>>> batches = new ArrayDeque<>();
+  private final int maxBatches;
+
+  private Iterator<Event> events = Collections.emptyIterator();
+  private boolean samplesDone;
+
+  /**
+   * @param samples the samples
+   * @param eventStreams creates the event stream of every thread, the
+   *     samples of the created streams are not used and can be
+   *     <code>null</code>
+   * @param threads the number of threads
+   */
+  public ParallelEventStream(ObjectStream<T> samples,
+      Supplier<? extends AbstractEventStream<T>> eventStreams, int threads) {
+    this(samples, eventStreams, threads, BATCH_SIZE_DEFAULT);
+  }
+
+  public ParallelEventStream(ObjectStream<T> samples,
+      Supplier<? extends AbstractEventStream<T>> eventStreams, int threads, int batchSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be at least 1, but is " + threads);
+    }
+    this.samples = samples;
+    this.batchSize = Math.max(1, batchSize);
+    for (int i = 0; i < threads; i++) {
+      this.eventStreams.add(eventStreams.get());
+    }
+    // two batches a thread, so the threads work while the events of a batch are read
+    maxBatches = 2 * threads;
+    executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(), r -> {
+          Thread thread = new Thread(r, "event-stream");
+          thread.setDaemon(true);
+          return thread;
+        });
+    // the trainers do not close their event streams, so idle threads end on their own
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public Event read() throws IOException {
+    while (!events.hasNext()) {
+      fill();
+      if (batches.isEmpty()) {
+        return null;
+      }
+      events = get(batches.poll()).iterator();
+    }
+    return events.next();
+  }
+
+  /**
+   * Reads the samples of the next batches and hands them to the threads.
+   */
+  private void fill() throws IOException {
+    while (!samplesDone && batches.size() < maxBatches) {
+      List<T> batch = new ArrayList<>(batchSize);
+      T sample;
+      while (batch.size() < batchSize && (sample = samples.read()) != null) {
+        batch.add(sample);
+      }
+      samplesDone = batch.size() < batchSize;
+      if (!batch.isEmpty()) {
+        batches.add(executor.submit(() -> createEvents(batch)));
+      }
+    }
+  }
+
+  private List<Event> createEvents(List<T> batch) {
+    AbstractEventStream<T> eventStream;
+    synchronized (eventStreams) {
+      eventStream = eventStreams.poll();
+    }
+    try {
+      List<Event> batchEvents = new ArrayList<>(batch.size() * 8);
+      for (T sample : batch) {
+        // the iterator may be backed by a list the stream reuses
+        Iterator<Event> sampleEvents = eventStream.createEvents(sample);
+        while (sampleEvents.hasNext()) {
+          batchEvents.add(sampleEvents.next());
+        }
+      }
+      return batchEvents;
+    }
+    finally {
+      synchronized (eventStreams) {
+        eventStreams.add(eventStream);
+      }
+    }
+  }
+
+  private static List<Event> get(Future<List<Event>> batch) throws IOException {
+    try {
+      return batch.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while creating events", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Waits for the batches which are being created and drops them.
+   */
+  private void drain() {
+    for (Future<List<Event>> batch : batches) {
+      try {
+        batch.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      catch (ExecutionException e) {
+        // dropped anyway
+      }
+    }
+    batches.clear();
+    events = Collections.emptyIterator();
+  }
+
+  @Override
+  public void reset() throws IOException, UnsupportedOperationException {
+    drain();
+    samplesDone = false;
+    samples.reset();
+  }
+
+  @Override
+  public void close() throws IOException {
+    drain();
+    executor.shutdown();
+    samples.close();
+  }
+}
@@ -0,0 +1,46 @@
+package jhazm;
+
+/**
+ * A normalized text together with the positions in the original text that
+ * each of its characters was produced from.
+ *
+ * @see SinglePassNormalizer#runWithOffsets(CharSequence)
+ */
+public class NormalizedText {
+    private final String text;
+    private final int[] starts;
+    private final int[] ends;
+    private final int originalLength;
+
+    NormalizedText(String text, int[] starts, int[] ends, int originalLength) {
+        this.text = text;
+        this.starts = starts;
+        this.ends = ends;
+        this.originalLength = originalLength;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Maps the start of a range in the normalized text to the original text.
+     *
+     * @param index a position in the normalized text, at most its length
+     * @return the position in the original text
+     */
+    public int getOriginalStart(int index) {
+        return index < starts.length ? starts[index] : originalLength;
+    }
+
+    /**
+     * Maps the exclusive end of a range in the normalized text to the
+     * original text.
+     *
+     * @param index a position in the normalized text, at most its length
+     * @return the position in the original text
+     */
+    public int getOriginalEnd(int index) {
+        return index > 0 ? ends[index - 1] : 0;
+    }
+}
\ No newline at end of file
@@ -10,7 +10,7 @@ import java.util.List;
  * @author Mojtaba Khallash
  */
 public class Normalizer {
-    public static Normalizer instance;
+    public static volatile Normalizer instance;
     private final String puncAfter = "!:\\.،؛؟»\\]\\)\\}";
     private final String puncBefore = "«\\[\\(\\{";
     private boolean characterRefinement = true;
@@ -71,9 +71,13 @@ public class Normalizer {
     }
 
     public static Normalizer i() {
-        if (instance != null) return instance;
-        instance = new Normalizer();
-        return instance;
+        Normalizer result = instance;
+        if (result != null) return result;
+        synchronized (Normalizer.class) {
+            if (instance == null)
+                instance = new Normalizer();
+            return instance;
+        }
     }
 
     public String run(String text) {
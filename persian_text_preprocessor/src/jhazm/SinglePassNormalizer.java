@@ -0,0 +1,890 @@
+package jhazm;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Produces exactly the same text as {@link Normalizer}, but in a single scan.
+ * <p>
+ * Every rule of {@link Normalizer} is implemented as a small stage that sees
+ * the output of the previous rule one character at a time and holds back at
+ * most a few characters while a match is undecided. Chaining the stages gives
+ * the same result as applying the regular expressions one after the other,
+ * in time linear in the length of the text and without any intermediate
+ * strings. The stages and the output buffer are reused by the calling thread.
+ * <p>
+ * {@link #runWithOffsets(CharSequence)} also records, for every character of
+ * the result, the range of the original text it was produced from, and
+ * {@link #runUtf8(ByteBuffer)} normalizes UTF-8 bytes while they are decoded.
+ * {@link #start(Consumer)} normalizes a text which arrives in pieces, in
+ * memory independent of its length.
+ */
+public class SinglePassNormalizer {
+    public static volatile SinglePassNormalizer instance;
+
+    private static final char ZWNJ = '‌';
+    private static final String PUNC_AFTER = "!:.،؛؟»])}";
+    private static final String PUNC_BEFORE = "«[({";
+    private static final int DECODE_BUFFER_SIZE = 4096;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** A larger buffer of a thread is dropped once its text is copied. */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 14;
+
+    private final boolean characterRefinement;
+    private final boolean punctuationSpacing;
+    private final boolean affixSpacing;
+    private final ThreadLocal<Scanner> scanners = ThreadLocal.withInitial(Scanner::new);
+
+    public SinglePassNormalizer() {
+        this(true, true, true);
+    }
+
+    public SinglePassNormalizer(boolean characterRefinement, boolean punctuationSpacing, boolean affixSpacing) {
+        this.characterRefinement = characterRefinement;
+        this.punctuationSpacing = punctuationSpacing;
+        this.affixSpacing = affixSpacing;
+    }
+
+    public static SinglePassNormalizer i() {
+        SinglePassNormalizer result = instance;
+        if (result != null) return result;
+        synchronized (SinglePassNormalizer.class) {
+            if (instance == null)
+                instance = new SinglePassNormalizer();
+            return instance;
+        }
+    }
+
+    public String run(CharSequence text) {
+        Scanner scanner = scanners.get();
+        scanner.reset(false);
+        scanner.push(text, 0, text.length());
+        scanner.finish();
+        String result = new String(scanner.sink.chars, 0, scanner.sink.length);
+        scanner.sink.trim();
+        return result;
+    }
+
+    /**
+     * Normalizes the text and maps every character of the result back to the
+     * characters of <code>text</code> it was produced from.
+     *
+     * @param text the text to normalize
+     * @return the normalized text with its offset map
+     */
+    public NormalizedText runWithOffsets(CharSequence text) {
+        Scanner scanner = scanners.get();
+        scanner.reset(true);
+        scanner.push(text, 0, text.length());
+        scanner.finish();
+        Sink sink = scanner.sink;
+        NormalizedText result = new NormalizedText(new String(sink.chars, 0, sink.length),
+            Arrays.copyOf(sink.starts, sink.length),
+            Arrays.copyOf(sink.ends, sink.length), text.length());
+        sink.trim();
+        return result;
+    }
+
+    /**
+     * Decodes UTF-8 text and normalizes it like {@link #run(CharSequence)},
+     * one chunk of characters at a time, without a String of the text or of
+     * the result. Malformed input is replaced like by
+     * <code>new String(bytes, UTF_8)</code>.
+     *
+     * @param utf8 the encoded text between its position and its limit, for
+     *     example a memory-mapped file; the buffer itself is not changed
+     * @return the normalized text, a view of a buffer of the calling thread
+     *     which is overwritten by the next call of this normalizer on it
+     */
+    public CharBuffer runUtf8(ByteBuffer utf8) {
+        Scanner scanner = scanners.get();
+        scanner.reset(false);
+        scanner.decode(utf8.duplicate());
+        scanner.finish();
+        return CharBuffer.wrap(scanner.sink.chars, 0, scanner.sink.length);
+    }
+
+    /**
+     * Starts normalizing a text which is pushed to the returned {@link Pass}
+     * in pieces. The result is the same as {@link #run(CharSequence)} of the
+     * whole text, but it is passed on as soon as no later character can
+     * change it, so the memory used does not grow with the text.
+     *
+     * @param out receives the normalized text in consecutive chunks, which
+     *     are only valid during the call
+     */
+    public Pass start(Consumer<CharBuffer> out) {
+        return new Pass(out);
+    }
+
+    /**
+     * The state of normalizing one text.
+     */
+    public final class Pass {
+        private final Scanner scanner = new Scanner();
+        private final Consumer<CharBuffer> out;
+        private int offset;
+
+        private Pass(Consumer<CharBuffer> out) {
+            this.out = out;
+            scanner.reset(false);
+        }
+
+        /**
+         * Normalizes the next piece of the text,
+         * <code>text[start, end)</code>.
+         */
+        public void push(CharSequence text, int start, int end) {
+            scanner.push(text, start, end, offset - start);
+            offset += end - start;
+            drain();
+        }
+
+        /**
+         * Ends the text and passes on the rest of the result.
+         */
+        public void finish() {
+            scanner.finish();
+            drain();
+        }
+
+        private void drain() {
+            Sink sink = scanner.sink;
+            if (sink.length > 0) {
+                out.accept(CharBuffer.wrap(sink.chars, 0, sink.length));
+                sink.length = 0;
+            }
+        }
+    }
+
+    private static boolean isPuncAfter(char c) {
+        return PUNC_AFTER.indexOf(c) >= 0;
+    }
+
+    private static boolean isPuncBefore(char c) {
+        return PUNC_BEFORE.indexOf(c) >= 0;
+    }
+
+    /**
+     * Characters at which a trailing <code>$</code> still matches when they
+     * end the text.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static char translate(char c) {
+        switch (c) {
+            case '\u00A0': return ' ';
+            case 'ك': return 'ک';
+            case 'ي': return 'ی';
+            case ';': return '؛';
+            case '%': return '٪';
+            default:
+                if (c >= '0' && c <= '9')
+                    return (char) ('۰' + (c - '0'));
+                return c;
+        }
+    }
+
+    /**
+     * The chain of stages of one thread.
+     */
+    private final class Scanner {
+        private final Sink sink = new Sink();
+        private final Stage first;
+        private CharsetDecoder decoder;
+        private CharBuffer decoded;
+
+        Scanner() {
+            Stage stage = sink;
+            if (affixSpacing) {
+                stage = new PronounSuffix(stage);
+                stage = new PluralSuffix(stage);
+                stage = new MiPrefix(stage);
+                stage = new YeSuffix(stage);
+            }
+            if (punctuationSpacing) {
+                stage = new SpaceBeforePuncBefore(stage);
+                stage = new SpaceAfterPuncAfter(stage);
+                stage = new NoSpaceAfterPuncBefore(stage);
+                stage = new NoSpaceBeforePuncAfter(stage);
+            }
+            if (characterRefinement) {
+                stage = new Ellipsis(stage);
+                stage = new NewlineRun(stage);
+                stage = new SpaceRun(stage);
+            }
+            first = stage;
+        }
+
+        void reset(boolean recordOffsets) {
+            for (Stage stage = first; stage != null; stage = stage.next)
+                stage.reset();
+            sink.recordOffsets = recordOffsets;
+        }
+
+        void push(CharSequence text, int start, int end) {
+            push(text, start, end, 0);
+        }
+
+        /**
+         * Pushes <code>text[start, end)</code>, which starts at
+         * <code>offset</code> in the original text.
+         */
+        void push(CharSequence text, int start, int end, int offset) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (characterRefinement) {
+                    // remove "keshide" and "carriage return" characters
+                    if (c == 'ـ' || c == '\r')
+                        continue;
+                    c = translate(c);
+                }
+                first.push(c, offset + i, offset + i + 1);
+            }
+        }
+
+        /**
+         * Decodes the bytes into a reused buffer and pushes every chunk.
+         */
+        void decode(ByteBuffer in) {
+            if (decoder == null) {
+                decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                decoded = CharBuffer.allocate(DECODE_BUFFER_SIZE);
+            }
+            decoder.reset();
+            int offset = 0;
+            CoderResult result;
+            do {
+                result = decoder.decode(in, decoded, true);
+                offset = pushDecoded(offset);
+            } while (result.isOverflow());
+            do {
+                result = decoder.flush(decoded);
+                offset = pushDecoded(offset);
+            } while (result.isOverflow());
+        }
+
+        private int pushDecoded(int offset) {
+            decoded.flip();
+            int length = decoded.remaining();
+            push(decoded, 0, length, offset);
+            decoded.clear();
+            return offset + length;
+        }
+
+        void finish() {
+            first.finish();
+        }
+    }
+
+    private abstract static class Stage {
+        final Stage next;
+
+        Stage(Stage next) {
+            this.next = next;
+        }
+
+        /**
+         * Takes the next character, produced from the characters
+         * <code>start</code> to <code>end</code> of the original text.
+         */
+        abstract void push(char c, int start, int end);
+
+        abstract void reset();
+
+        void finish() {
+            next.finish();
+        }
+    }
+
+    /**
+     * Collects the normalized text.
+     */
+    private static final class Sink extends Stage {
+        char[] chars = new char[INITIAL_CAPACITY];
+        int[] starts = new int[0];
+        int[] ends = new int[0];
+        int length;
+        boolean recordOffsets;
+
+        Sink() {
+            super(null);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (length == chars.length)
+                chars = Arrays.copyOf(chars, length * 2);
+            if (recordOffsets) {
+                if (length >= starts.length) {
+                    starts = Arrays.copyOf(starts, chars.length);
+                    ends = Arrays.copyOf(ends, chars.length);
+                }
+                starts[length] = start;
+                ends[length] = end;
+            }
+            chars[length++] = c;
+        }
+
+        @Override
+        void reset() {
+            length = 0;
+            trim();
+        }
+
+        /**
+         * Drops the buffers if a long text grew them, so a thread does not
+         * keep the size of the longest text it has seen. The result of
+         * {@link #runUtf8(ByteBuffer)} is a view of them and stays valid.
+         */
+        void trim() {
+            if (chars.length > MAX_RETAINED_CAPACITY) {
+                chars = new char[INITIAL_CAPACITY];
+            }
+            if (starts.length > MAX_RETAINED_CAPACITY) {
+                starts = new int[0];
+                ends = new int[0];
+            }
+        }
+
+        @Override
+        void finish() {
+        }
+    }
+
+    /**
+     * A stage that holds back characters while a rule may still match them.
+     */
+    private abstract static class PendingStage extends Stage {
+        final char[] pending = new char[8];
+        final int[] pendingStarts = new int[8];
+        final int[] pendingEnds = new int[8];
+        int pendingLength;
+
+        PendingStage(Stage next) {
+            super(next);
+        }
+
+        void hold(char c, int start, int end) {
+            pending[pendingLength] = c;
+            pendingStarts[pendingLength] = start;
+            pendingEnds[pendingLength] = end;
+            pendingLength++;
+        }
+
+        void release() {
+            for (int i = 0; i < pendingLength; i++)
+                emit(pending[i], pendingStarts[i], pendingEnds[i]);
+            pendingLength = 0;
+        }
+
+        void emit(char c, int start, int end) {
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            pendingLength = 0;
+        }
+    }
+
+    /**
+     * Remove extra spaces: <code>" +"</code> to <code>" "</code>.
+     */
+    private static final class SpaceRun extends Stage {
+        private boolean afterSpace;
+
+        SpaceRun(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (c == ' ') {
+                if (afterSpace)
+                    return;
+                afterSpace = true;
+            } else {
+                afterSpace = false;
+            }
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            afterSpace = false;
+        }
+    }
+
+    /**
+     * Remove extra newlines: <code>"\n\n+"</code> to <code>"\n\n"</code>.
+     */
+    private static final class NewlineRun extends Stage {
+        private int newlines;
+
+        NewlineRun(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (c == '\n') {
+                if (++newlines > 2)
+                    return;
+            } else {
+                newlines = 0;
+            }
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            newlines = 0;
+        }
+    }
+
+    /**
+     * Replace 3 dots: <code>" ?\.\.\."</code> to <code>" …"</code>.
+     */
+    private static final class Ellipsis extends PendingStage {
+        Ellipsis(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (c == '.') {
+                int dots = pendingLength > 0 && pending[0] == ' ' ? pendingLength - 1 : pendingLength;
+                if (dots == 2) {
+                    int first = pendingLength - 2;
+                    if (first == 1)
+                        emit(' ', pendingStarts[0], pendingEnds[0]);
+                    else
+                        emit(' ', pendingStarts[0], pendingStarts[0]);
+                    emit('…', pendingStarts[first], end);
+                    pendingLength = 0;
+                } else {
+                    hold(c, start, end);
+                }
+                return;
+            }
+            release();
+            if (c == ' ')
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+
+        @Override
+        void finish() {
+            release();
+            next.finish();
+        }
+    }
+
+    /**
+     * Remove space before punctuation: <code>" ([PUNC_AFTER])"</code> to
+     * <code>"$1"</code>.
+     */
+    private static final class NoSpaceBeforePuncAfter extends PendingStage {
+        NoSpaceBeforePuncAfter(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (pendingLength > 0) {
+                if (isPuncAfter(c))
+                    pendingLength = 0;
+                else
+                    release();
+            }
+            if (c == ' ')
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+
+        @Override
+        void finish() {
+            release();
+            next.finish();
+        }
+    }
+
+    /**
+     * Remove space after punctuation: <code>"([PUNC_BEFORE]) "</code> to
+     * <code>"$1"</code>.
+     */
+    private static final class NoSpaceAfterPuncBefore extends Stage {
+        private boolean afterPunc;
+
+        NoSpaceAfterPuncBefore(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (c == ' ' && afterPunc) {
+                afterPunc = false;
+                return;
+            }
+            afterPunc = isPuncBefore(c);
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            afterPunc = false;
+        }
+    }
+
+    /**
+     * Put space after punctuation: <code>"([PUNC_AFTER])([^ PUNC_AFTER])"</code>
+     * to <code>"$1 $2"</code>.
+     */
+    private static final class SpaceAfterPuncAfter extends Stage {
+        private boolean afterPunc;
+
+        SpaceAfterPuncAfter(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            boolean punc = isPuncAfter(c);
+            if (afterPunc && c != ' ' && !punc)
+                next.push(' ', start, start);
+            afterPunc = punc;
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            afterPunc = false;
+        }
+    }
+
+    /**
+     * Put space before punctuation: <code>"([^ PUNC_BEFORE])([PUNC_BEFORE])"</code>
+     * to <code>"$1 $2"</code>.
+     */
+    private static final class SpaceBeforePuncBefore extends Stage {
+        private boolean afterOther;
+
+        SpaceBeforePuncBefore(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            boolean punc = isPuncBefore(c);
+            if (afterOther && punc)
+                next.push(' ', start, start);
+            afterOther = c != ' ' && !punc;
+            next.push(c, start, end);
+        }
+
+        @Override
+        void reset() {
+            afterOther = false;
+        }
+    }
+
+    /**
+     * A pending stage that remembers the last two characters it emitted.
+     */
+    private abstract static class HistoryStage extends PendingStage {
+        /** The last two emitted characters, <code>-1</code> before the text. */
+        int last = -1;
+        int beforeLast = -1;
+
+        HistoryStage(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void emit(char c, int start, int end) {
+            beforeLast = last;
+            last = c;
+            next.push(c, start, end);
+        }
+
+        /**
+         * Whether the last emitted characters match <code>"[^ ]ه"</code>.
+         */
+        boolean afterHe() {
+            return last == 'ه' && beforeLast != -1 && beforeLast != ' ';
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            last = -1;
+            beforeLast = -1;
+        }
+    }
+
+    /**
+     * Fix ی space: <code>"([^ ]ه) ی "</code> to <code>"$1‌ی "</code>.
+     */
+    private static final class YeSuffix extends HistoryStage {
+        YeSuffix(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (pendingLength == 1 && c == 'ی') {
+                hold(c, start, end);
+                return;
+            }
+            if (pendingLength == 2 && c == ' ') {
+                pending[0] = ZWNJ;
+                release();
+            } else {
+                release();
+            }
+            if (c == ' ' && afterHe())
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+
+        @Override
+        void finish() {
+            release();
+            next.finish();
+        }
+    }
+
+    /**
+     * Put zwnj after می, نمی: <code>"(^| )(ن?می) "</code> to <code>"$1$2‌"</code>.
+     */
+    private static final class MiPrefix extends HistoryStage {
+        MiPrefix(Stage next) {
+            super(next);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (pendingLength > 0) {
+                if (continuesPrefix(c)) {
+                    hold(c, start, end);
+                    return;
+                }
+                if (c == ' ' && pending[pendingLength - 1] == 'ی') {
+                    release();
+                    emit(ZWNJ, start, end);
+                    return;
+                }
+                release();
+            }
+            if ((c == 'ن' || c == 'م') && (last == -1 || last == ' '))
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+
+        /**
+         * Whether the pending characters followed by <code>c</code> are still
+         * a prefix of <code>"نمی"</code> or <code>"می"</code>.
+         */
+        private boolean continuesPrefix(char c) {
+            char previous = pending[pendingLength - 1];
+            return previous == 'ن' && c == 'م' || previous == 'م' && c == 'ی';
+        }
+
+        @Override
+        void finish() {
+            release();
+            next.finish();
+        }
+    }
+
+    /**
+     * A pending stage for a rule that ends with the lookahead
+     * <code>(?=[...]|$)</code>. Once the affix is complete, a line terminator
+     * is held back until it is known whether it ends the text.
+     */
+    private abstract static class SuffixStage extends HistoryStage {
+        /** Whether the pending characters end with a complete affix. */
+        boolean complete;
+        /** The number of held back line terminator characters. */
+        int terminators;
+
+        SuffixStage(Stage next) {
+            super(next);
+        }
+
+        abstract boolean isLookahead(char c);
+
+        /** Emits the pending characters with the space replaced by zwnj. */
+        void join() {
+            pending[0] = ZWNJ;
+            release();
+            complete = false;
+            terminators = 0;
+        }
+
+        /**
+         * Handles <code>c</code> after a complete affix. Returns whether
+         * <code>c</code> was consumed.
+         */
+        boolean pushAfterAffix(char c, int start, int end) {
+            if (terminators == 0 && isLookahead(c)) {
+                join();
+                return false;
+            }
+            if (terminators == 0 && isLineTerminator(c)
+                || terminators == 1 && pending[pendingLength - 1] == '\r' && c == '\n') {
+                hold(c, start, end);
+                terminators++;
+                return true;
+            }
+            complete = false;
+            terminators = 0;
+            release();
+            return false;
+        }
+
+        @Override
+        void finish() {
+            if (complete)
+                join();
+            else
+                release();
+            next.finish();
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            complete = false;
+            terminators = 0;
+        }
+    }
+
+    /**
+     * Put zwnj before تر, ترین, ها, های:
+     * <code>" (تر(ی(ن)?)?|ها(ی)?)(?=[ \nPUNC_AFTER PUNC_BEFORE]|$)"</code> to
+     * <code>"‌$1"</code>.
+     */
+    private static final class PluralSuffix extends SuffixStage {
+        private static final String[] AFFIXES = {"تر", "تری", "ترین", "ها", "های"};
+
+        PluralSuffix(Stage next) {
+            super(next);
+        }
+
+        @Override
+        boolean isLookahead(char c) {
+            return c == ' ' || c == '\n' || isPuncAfter(c) || isPuncBefore(c);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (pendingLength > 0) {
+                if (terminators == 0 && isAffixPrefix(c)) {
+                    hold(c, start, end);
+                    complete = isAffix();
+                    return;
+                }
+                if (complete) {
+                    if (pushAfterAffix(c, start, end))
+                        return;
+                } else {
+                    release();
+                }
+            }
+            if (c == ' ')
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+
+        /**
+         * Whether the pending characters after the space, followed by
+         * <code>c</code>, are a prefix of one of the affixes.
+         */
+        private boolean isAffixPrefix(char c) {
+            for (String affix : AFFIXES) {
+                if (affix.length() >= pendingLength && affix.charAt(pendingLength - 1) == c
+                    && startsWithPending(affix))
+                    return true;
+            }
+            return false;
+        }
+
+        private boolean isAffix() {
+            for (String affix : AFFIXES) {
+                if (affix.length() == pendingLength - 1 && startsWithPending(affix))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Whether the affix starts with the pending characters after the space.
+         */
+        private boolean startsWithPending(String affix) {
+            for (int i = 1; i < pendingLength; i++) {
+                if (affix.charAt(i - 1) != pending[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Join ام, ات, اش, ای:
+     * <code>"([^ ]ه) (ا(م|ت|ش|ی))(?=[ \nPUNC_AFTER]|$)"</code> to
+     * <code>"$1‌$2"</code>.
+     */
+    private static final class PronounSuffix extends SuffixStage {
+        PronounSuffix(Stage next) {
+            super(next);
+        }
+
+        @Override
+        boolean isLookahead(char c) {
+            return c == ' ' || c == '\n' || isPuncAfter(c);
+        }
+
+        @Override
+        void push(char c, int start, int end) {
+            if (pendingLength == 1 && c == 'ا') {
+                hold(c, start, end);
+                return;
+            }
+            if (pendingLength == 2 && (c == 'م' || c == 'ت' || c == 'ش' || c == 'ی')) {
+                hold(c, start, end);
+                complete = true;
+                return;
+            }
+            if (pendingLength > 0) {
+                if (complete) {
+                    if (pushAfterAffix(c, start, end))
+                        return;
+                } else {
+                    release();
+                }
+            }
+            if (c == ' ' && afterHe())
+                hold(c, start, end);
+            else
+                emit(c, start, end);
+        }
+    }
+}
@@ -11,7 +11,7 @@ import java.util.List;
  * @author Mojtaba Khallash
  */
 public class SentenceTokenizer {
-    public static SentenceTokenizer instance;
+    public static volatile SentenceTokenizer instance;
     private final RegexPattern pattern;
     
     public static final SentenceTokenizer INSTANCE = new SentenceTokenizer();
@@ -22,9 +22,13 @@ public class SentenceTokenizer {
     }
 
     public static SentenceTokenizer i() {
-        if (instance != null) return instance;
-        instance = new SentenceTokenizer();
-        return instance;
+        SentenceTokenizer result = instance;
+        if (result != null) return result;
+        synchronized (SentenceTokenizer.class) {
+            if (instance == null)
+                instance = new SentenceTokenizer();
+            return instance;
+        }
     }
 
     public List<String> tokenize(String text) {
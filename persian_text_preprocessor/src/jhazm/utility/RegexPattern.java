@@ -1,18 +1,20 @@
 package jhazm.utility;
 
+import java.util.regex.Pattern;
+
 /**
  *
  * @author Mojtaba Khallash
  */
 public class RegexPattern {
-    private final String Pattern;
-    private final String Replace;
+    private final Pattern pattern;
+    private final String replace;
     public RegexPattern(String pattern, String replace) {
-        this.Pattern = pattern;
-        this.Replace = replace;
+        this.pattern = Pattern.compile(pattern);
+        this.replace = replace;
     }
 
     public String apply(String text) {
-        return text.replaceAll(Pattern, Replace);
+        return pattern.matcher(text).replaceAll(replace);
     }
 }
\ No newline at end of file
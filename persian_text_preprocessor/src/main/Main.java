@@ -11,20 +11,20 @@ public class Main {
 	public static void main(String[] args) {
 		try {
 			BufferedReader brInput = new BufferedReader(new FileReader("resources/data/input.txt"));
-	        String text = "";
+			// The lines are tokenized while they are read, so the input is
+			// never held in memory as a whole
+			Preprocessor.Pass pass = Preprocessor.INSTANCE.start(
+					(token, start, end) -> System.out.println(token.subSequence(start, end)));
 			String line1 = null;
 			while ((line1 = brInput.readLine()) != null) {
 	            line1 = line1.trim();
 	            if (!line1.isEmpty()) {
-	            	text += "\n " + line1;
+	            	pass.push("\n ");
+	            	pass.push(line1);
 	            }
 	        }
 			brInput.close();
-			
-			String[] tokens = Preprocessor.INSTANCE.run(text);
-			for (String token : tokens) {
-				System.out.println(token);
-			}
+			pass.finish();
 			
 			
 		}catch (IOException ioe) {
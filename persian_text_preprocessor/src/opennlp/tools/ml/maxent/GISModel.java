@@ -20,6 +20,9 @@ package opennlp.tools.ml.maxent;
 import opennlp.tools.ml.model.AbstractModel;
 import opennlp.tools.ml.model.Context;
 import opennlp.tools.ml.model.EvalParameters;
+import opennlp.tools.ml.model.EvalWorkspace;
+import opennlp.tools.ml.model.FlatParameters;
+import opennlp.tools.ml.model.PredicateIndexedModel;
 import opennlp.tools.ml.model.Prior;
 import opennlp.tools.ml.model.UniformPrior;
 
@@ -27,7 +30,7 @@ import opennlp.tools.ml.model.UniformPrior;
  * A maximum entropy model which has been trained using the Generalized
  * Iterative Scaling procedure (implemented in GIS.java).
  */
-public final class GISModel extends AbstractModel {
+public final class GISModel extends AbstractModel implements PredicateIndexedModel {
 
   /**
    * Creates a new model with the specified parameters, outcome names, and
@@ -105,13 +108,51 @@ public final class GISModel extends AbstractModel {
   public final double[] eval(String[] context, float[] values, double[] outsums) {
     int[] scontexts = new int[context.length];
     for (int i = 0; i < context.length; i++) {
-      Integer ci = pmap.get(context[i]);
-      scontexts[i] = ci == null ? -1 : ci;
+      scontexts[i] = pmap.get(context[i]);
     }
     prior.logPrior(outsums, scontexts, values);
     return GISModel.eval(scontexts, values, outsums, evalParams);
   }
 
+  /**
+   * Evaluates the context over the {@link FlatParameters} of this model,
+   * with the same result as {@link #eval(String[], float[], double[])}.
+   */
+  @Override
+  public double[] eval(int[] context, float[] values, EvalWorkspace ws) {
+    double[] outsums = getOutsums(ws);
+    prior.logPrior(outsums, context, values);
+    FlatParameters params = getFlatParameters();
+    double value = 1;
+    for (int ci = 0; ci < context.length; ci++) {
+      if (context[ci] >= 0) {
+        if (values != null) {
+          value = values[ci];
+        }
+        params.addTo(context[ci], value, outsums);
+      }
+    }
+    return normalize(outsums, getNumOutcomes());
+  }
+
+
+  /**
+   * Use this model to evaluate a context given by the ids of its predicates,
+   * as for example produced by a
+   * {@link opennlp.tools.tokenize.HashedTokenContextGenerator}. Negative ids
+   * are ignored, so a reused buffer can be padded with -1.
+   *
+   * @param context
+   *          The integer values of the predicates which have been observed at
+   *          the present decision point.
+   * @param outsums
+   *          This is where the distribution is stored.
+   * @return The normalized probabilities for the outcomes given the context.
+   */
+  public final double[] eval(int[] context, double[] outsums) {
+    prior.logPrior(outsums, context);
+    return GISModel.eval(context, null, outsums, evalParams);
+  }
 
   /**
    * Use this model to evaluate a context and return an array of the likelihood
@@ -156,7 +197,6 @@ public final class GISModel extends AbstractModel {
   public static double[] eval(int[] context, float[] values, double[] prior,
       EvalParameters model) {
     Context[] params = model.getParams();
-    int[] numfeats = new int[model.getNumOutcomes()];
     int[] activeOutcomes;
     double[] activeParameters;
     double value = 1;
@@ -170,21 +210,23 @@ public final class GISModel extends AbstractModel {
         }
         for (int ai = 0; ai < activeOutcomes.length; ai++) {
           int oid = activeOutcomes[ai];
-          numfeats[oid]++;
           prior[oid] += activeParameters[ai] * value;
         }
       }
     }
+    return normalize(prior, model.getNumOutcomes());
+  }
 
+  private static double[] normalize(double[] outsums, int numOutcomes) {
     double normal = 0.0;
-    for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-      prior[oid] = Math.exp(prior[oid]);
-      normal += prior[oid];
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] = Math.exp(outsums[oid]);
+      normal += outsums[oid];
     }
 
-    for (int oid = 0; oid < model.getNumOutcomes(); oid++) {
-      prior[oid] /= normal;
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] /= normal;
     }
-    return prior;
+    return outsums;
   }
 }
@@ -19,14 +19,13 @@ package opennlp.tools.ml.model;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 public abstract class AbstractModel implements MaxentModel {
 
   /** Mapping between predicates/contexts and an integer representing them. */
-  protected Map<String, Integer> pmap;
+  protected PredicateIndex pmap;
   /** The names of the outcomes. */
   protected String[] outcomeNames;
   /** Parameters for the model. */
@@ -39,6 +38,9 @@ public abstract class AbstractModel implements MaxentModel {
   /** The type of the model. */
   protected ModelType modelType;
 
+  /** The parameters as flat arrays, created by {@link #getFlatParameters()}. */
+  private volatile FlatParameters flatParameters;
+
   /**
    * @deprecated this will be removed in 1.8.1, pmap should be private
    *
@@ -50,7 +52,7 @@ public abstract class AbstractModel implements MaxentModel {
   @Deprecated
   public AbstractModel(Context[] params, String[] predLabels,
       Map<String, Integer> pmap, String[] outcomeNames) {
-    this.pmap = pmap;
+    this.pmap = PredicateIndex.fromMap(pmap);
     this.outcomeNames =  outcomeNames;
     this.evalParams = new EvalParameters(params,outcomeNames.length);
   }
@@ -61,11 +63,7 @@ public abstract class AbstractModel implements MaxentModel {
   }
 
   private void init(String[] predLabels, String[] outcomeNames) {
-    this.pmap = new HashMap<>(predLabels.length);
-
-    for (int i = 0; i < predLabels.length; i++) {
-      pmap.put(predLabels[i], i);
-    }
+    this.pmap = new PredicateIndex(predLabels);
 
     this.outcomeNames =  outcomeNames;
   }
@@ -148,6 +146,108 @@ public abstract class AbstractModel implements MaxentModel {
     return evalParams.getNumOutcomes();
   }
 
+  /**
+   * @return a workspace for evaluating this model without allocating
+   */
+  public EvalWorkspace createWorkspace() {
+    return new EvalWorkspace(getNumOutcomes());
+  }
+
+  /**
+   * Evaluates a context like <code>eval(context, values)</code>, but in the
+   * buffers of a workspace.
+   *
+   * @param context
+   *          The names of the predicates which have been observed at the
+   *          present decision point.
+   * @param values
+   *          The values of the predicates, or <code>null</code>.
+   * @param ws
+   *          The workspace of the calling thread.
+   * @return The normalized probabilities for the outcomes, a buffer of the
+   *         workspace.
+   */
+  public final double[] eval(String[] context, float[] values, EvalWorkspace ws) {
+    int[] ids = ws.getContextIds(context.length);
+    for (int ci = 0; ci < context.length; ci++) {
+      ids[ci] = pmap.get(context[ci]);
+    }
+    return eval(ids, values, ws);
+  }
+
+  /**
+   * Evaluates a context given by the ids of its predicates in the buffers of
+   * a workspace. Negative ids are ignored, so a reused buffer can be padded
+   * with -1.
+   *
+   * @param context
+   *          The ids of the predicates which have been observed at the
+   *          present decision point.
+   * @param values
+   *          The values of the predicates, or <code>null</code>.
+   * @param ws
+   *          The workspace of the calling thread.
+   * @return The normalized probabilities for the outcomes, a buffer of the
+   *         workspace.
+   */
+  public abstract double[] eval(int[] context, float[] values, EvalWorkspace ws);
+
+  /**
+   * Evaluates a batch of contexts given by the ids of their predicates, for
+   * example the contexts of all positions of a token.
+   *
+   * @param contexts
+   *          The ids of the predicates of every context, negative ids are
+   *          ignored.
+   * @param values
+   *          The values of the predicates of every context, or
+   *          <code>null</code>.
+   * @param count
+   *          The number of contexts to evaluate, from the first one.
+   * @param ws
+   *          The workspace of the calling thread.
+   * @return The normalized probabilities for the outcomes of context
+   *         <code>i</code> at the indexes from
+   *         <code>i * getNumOutcomes()</code>, a buffer of the workspace.
+   */
+  public double[] eval(int[][] contexts, float[][] values, int count, EvalWorkspace ws) {
+    int numOutcomes = getNumOutcomes();
+    double[] batch = ws.getBatch(count);
+    for (int i = 0; i < count; i++) {
+      double[] outsums = eval(contexts[i], values == null ? null : values[i], ws);
+      System.arraycopy(outsums, 0, batch, i * numOutcomes, numOutcomes);
+    }
+    return batch;
+  }
+
+  /**
+   * @return the buffer of the workspace for the distribution of one
+   *     context, filled with zeros
+   */
+  protected final double[] getOutsums(EvalWorkspace ws) {
+    if (ws.getNumOutcomes() != getNumOutcomes()) {
+      throw new IllegalArgumentException("The workspace is for " + ws.getNumOutcomes()
+          + " outcomes, the model has " + getNumOutcomes());
+    }
+    double[] outsums = ws.getOutsums();
+    Arrays.fill(outsums, 0);
+    return outsums;
+  }
+
+  /**
+   * @return the parameters of this model as {@link FlatParameters}, which
+   *     are created on first use
+   */
+  protected final FlatParameters getFlatParameters() {
+    FlatParameters flat = flatParameters;
+    if (flat == null) {
+      // racing threads create equal copies, which is harmless
+      flat = new FlatParameters(evalParams.getParams(), evalParams.getNumOutcomes());
+      flatParameters = flat;
+    }
+    return flat;
+  }
+
   /**
    * Provides the fundamental data structures which encode the maxent model
    * information.  This method will usually only be needed by
@@ -157,7 +257,8 @@ public abstract class AbstractModel implements MaxentModel {
    * <li>index 0: opennlp.tools.ml.maxent.Context[] containing the model
    *            parameters
    * <li>index 1: java.util.Map containing the mapping of model predicates
-   *            to unique integers
+   *            to unique integers, an unmodifiable view of
+   *            {@link #getPredicateIndex()}
    * <li>index 2: java.lang.String[] containing the names of the outcomes,
    *            stored in the index of the array which represents their
    *            unique ids in the model.
@@ -168,11 +269,18 @@ public abstract class AbstractModel implements MaxentModel {
   public final Object[] getDataStructures() {
     Object[] data = new Object[3];
     data[0] = evalParams.getParams();
-    data[1] = pmap;
+    data[1] = pmap.asMap();
     data[2] = outcomeNames;
     return data;
   }
 
+  /**
+   * @return the mapping of model predicates to unique integers
+   */
+  public final PredicateIndex getPredicateIndex() {
+    return pmap;
+  }
+
   @Override
   public int hashCode() {
     return Objects.hash(pmap, Arrays.hashCode(outcomeNames), evalParams, prior);
@@ -0,0 +1,113 @@
+package opennlp.tools.ml.model;
+
+import java.nio.DoubleBuffer;
+
+import opennlp.tools.ml.maxent.GISModel;
+
+/**
+ * Evaluates a maximum entropy model with exactly two outcomes as a logistic
+ * regression. With a uniform prior the probability of the positive outcome
+ * only depends on the difference of the two outcome parameters of every
+ * predicate, so one weight per predicate is kept and a decision costs one
+ * sum and one exponential. The probabilities equal those of
+ * {@link GISModel#eval(String[])} up to floating-point rounding.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public final class BinaryOutcomeEvaluator {
+
+  private final PredicateIndex pmap;
+  /** The parameter of the first outcome minus that of the second one. */
+  private final DoubleBuffer weights;
+  /** 1 if the positive outcome is the first one, otherwise -1. */
+  private final double sign;
+  private final boolean positiveWinsTie;
+
+  private BinaryOutcomeEvaluator(PredicateIndex pmap, DoubleBuffer weights, int positive) {
+    this.pmap = pmap;
+    this.weights = weights;
+    this.sign = positive == 0 ? 1 : -1;
+    // the outcome with the lower index is the best one on a tie
+    this.positiveWinsTie = positive == 0;
+  }
+
+  private static DoubleBuffer weights(AbstractModel model) {
+    Context[] params = model.evalParams.getParams();
+    double[] weights = new double[params.length];
+    for (int pi = 0; pi < params.length; pi++) {
+      int[] outcomes = params[pi].getOutcomes();
+      double[] parameters = params[pi].getParameters();
+      double weight = 0;
+      for (int ai = 0; ai < outcomes.length; ai++) {
+        weight += outcomes[ai] == 0 ? parameters[ai] : -parameters[ai];
+      }
+      weights[pi] = weight;
+    }
+    return DoubleBuffer.wrap(weights);
+  }
+
+  /**
+   * Creates an evaluator for the model if it is a {@link GISModel} with two
+   * outcomes and a uniform prior, or a {@link MappedModel} with two outcomes.
+   *
+   * @param positiveOutcome the outcome whose probability is computed
+   * @return the evaluator, or <code>null</code> if the model is not supported
+   */
+  public static BinaryOutcomeEvaluator create(MaxentModel model, String positiveOutcome) {
+    if (model.getNumOutcomes() != 2) {
+      return null;
+    }
+    int positive = model.getIndex(positiveOutcome);
+    if (positive < 0) {
+      return null;
+    }
+    if (model instanceof GISModel && ((AbstractModel) model).prior instanceof UniformPrior) {
+      AbstractModel gis = (AbstractModel) model;
+      return new BinaryOutcomeEvaluator(gis.pmap, weights(gis), positive);
+    }
+    if (model instanceof MappedModel) {
+      MappedModel mapped = (MappedModel) model;
+      return new BinaryOutcomeEvaluator(mapped.getPredicateIndex(), mapped.getBinaryWeights(), positive);
+    }
+    return null;
+  }
+
+  /**
+   * Computes the probability of the positive outcome for a context given by
+   * predicate ids. Negative ids are ignored.
+   */
+  public double probability(int[] context) {
+    double score = 0;
+    for (int id : context) {
+      if (id >= 0) {
+        score += weights.get(id);
+      }
+    }
+    return 1 / (1 + Math.exp(-sign * score));
+  }
+
+  /**
+   * Computes the probability of the positive outcome for a context given by
+   * the names of its predicates.
+   */
+  public double probability(String[] context) {
+    double score = 0;
+    for (String predicate : context) {
+      int id = pmap.get(predicate);
+      if (id >= 0) {
+        score += weights.get(id);
+      }
+    }
+    return 1 / (1 + Math.exp(-sign * score));
+  }
+
+  /**
+   * Tells whether the positive outcome is the best outcome, as
+   * {@link AbstractModel#getBestOutcome(double[])} would decide.
+   *
+   * @param probability the probability of the positive outcome
+   */
+  public boolean isPositive(double probability) {
+    return probability > 0.5 || (probability == 0.5 && positiveWinsTie);
+  }
+}
@@ -0,0 +1,62 @@
+package opennlp.tools.ml.model;
+
+import java.util.Arrays;
+
+/**
+ * The buffers of evaluating a model, owned by the caller, so a thread which
+ * evaluates many contexts allocates them once instead of on every call.
+ * A workspace is created by {@link AbstractModel#createWorkspace()} and can
+ * be used with every model with the same number of outcomes.
+ * <p>
+ * The arrays returned by the eval methods which take a workspace are its
+ * buffers and are only valid until the next call with the same workspace.
+ * Instances are not thread-safe, every thread needs its own.
+ */
+public class EvalWorkspace {
+
+  private final int numOutcomes;
+  private final double[] outsums;
+  private int[] contextIds = new int[32];
+  private double[] batch;
+
+  public EvalWorkspace(int numOutcomes) {
+    this.numOutcomes = numOutcomes;
+    outsums = new double[numOutcomes];
+    batch = new double[numOutcomes * 32];
+  }
+
+  public int getNumOutcomes() {
+    return numOutcomes;
+  }
+
+  /**
+   * @return the buffer for the distribution of one context
+   */
+  public double[] getOutsums() {
+    return outsums;
+  }
+
+  /**
+   * @return a buffer for the ids of the predicates of a context with
+   *     <code>length</code> predicates, whose entries after the first
+   *     <code>length</code> ones are -1
+   */
+  public int[] getContextIds(int length) {
+    if (length > contextIds.length) {
+      contextIds = new int[Math.max(length, contextIds.length * 2)];
+    }
+    Arrays.fill(contextIds, length, contextIds.length, -1);
+    return contextIds;
+  }
+
+  /**
+   * @return a buffer for the distributions of <code>count</code> contexts,
+   *     one after the other
+   */
+  public double[] getBatch(int count) {
+    if (count * numOutcomes > batch.length) {
+      batch = new double[Math.max(count * numOutcomes, batch.length * 2)];
+    }
+    return batch;
+  }
+}
@@ -0,0 +1,103 @@
+package opennlp.tools.ml.model;
+
+/**
+ * The parameters of a model packed into flat arrays: the outcomes and the
+ * parameters of all predicates one after the other, the ones of a predicate
+ * ordered by outcome, and the offset of every predicate into them.
+ * <p>
+ * Evaluating a context with them reads consecutive elements of two arrays
+ * instead of following two references of a {@link Context} for every
+ * predicate. For a predicate with a parameter for every outcome, as all of a
+ * quasi-Newton model and most of a model with few outcomes have, the sums
+ * are added in a loop over consecutive elements with no indirection, which
+ * the JIT compiler turns into vector instructions.
+ * <p>
+ * Instances are immutable and thread-safe. They are a copy, so the
+ * parameters of a model which is still being trained are not flattened.
+ */
+public final class FlatParameters {
+
+  private final int numOutcomes;
+  private final int[] offsets;
+  private final int[] outcomes;
+  private final double[] parameters;
+
+  public FlatParameters(Context[] params, int numOutcomes) {
+    this.numOutcomes = numOutcomes;
+    offsets = new int[params.length + 1];
+    for (int pi = 0; pi < params.length; pi++) {
+      offsets[pi + 1] = offsets[pi] + params[pi].getOutcomes().length;
+    }
+    outcomes = new int[offsets[params.length]];
+    parameters = new double[outcomes.length];
+    for (int pi = 0; pi < params.length; pi++) {
+      int start = offsets[pi];
+      int[] activeOutcomes = params[pi].getOutcomes();
+      double[] activeParameters = params[pi].getParameters();
+      System.arraycopy(activeOutcomes, 0, outcomes, start, activeOutcomes.length);
+      System.arraycopy(activeParameters, 0, parameters, start, activeOutcomes.length);
+      // insertion sort by outcome, the outcomes of a trained model are sorted already
+      for (int i = start + 1; i < offsets[pi + 1]; i++) {
+        int outcome = outcomes[i];
+        double parameter = parameters[i];
+        int j = i - 1;
+        for (; j >= start && outcomes[j] > outcome; j--) {
+          outcomes[j + 1] = outcomes[j];
+          parameters[j + 1] = parameters[j];
+        }
+        outcomes[j + 1] = outcome;
+        parameters[j + 1] = parameter;
+      }
+    }
+  }
+
+  public int getNumOutcomes() {
+    return numOutcomes;
+  }
+
+  public int getNumPredicates() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * @return the offset of the first outcome and parameter of every
+   *     predicate, and after them their number; the array must not be
+   *     modified
+   */
+  public int[] getOffsets() {
+    return offsets;
+  }
+
+  /**
+   * @return the outcomes of all predicates; the array must not be modified
+   */
+  public int[] getOutcomes() {
+    return outcomes;
+  }
+
+  /**
+   * @return the parameters of all predicates; the array must not be modified
+   */
+  public double[] getParameters() {
+    return parameters;
+  }
+
+  /**
+   * Adds the parameters of the predicate times the value to the sums of
+   * their outcomes.
+   */
+  public void addTo(int pred, double value, double[] sums) {
+    int start = offsets[pred];
+    int end = offsets[pred + 1];
+    if (end - start == numOutcomes) {
+      for (int oid = 0; oid < numOutcomes; oid++) {
+        sums[oid] += parameters[start + oid] * value;
+      }
+    }
+    else {
+      for (int ai = start; ai < end; ai++) {
+        sums[outcomes[ai]] += parameters[ai] * value;
+      }
+    }
+  }
+}
@@ -0,0 +1,346 @@
+package opennlp.tools.ml.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Properties;
+
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.util.InvalidFormatException;
+
+/**
+ * A maximum entropy model which is evaluated in place from a read-only
+ * memory-mapped file, so opening it costs no parsing and all processes which
+ * map the same file share one copy of it in the page cache.
+ * <p>
+ * The file is written by {@link #write(GISModel, Properties, OutputStream)}
+ * and has the following layout, all numbers big-endian:
+ * <ul>
+ * <li>header: the magic number, the format version, the number of outcomes,
+ *     the number of predicates, the length of the predicate hash table, the
+ *     number of predicate label characters, the length of the manifest in
+ *     bytes and a reserved int
+ * <li>manifest: a {@link Properties} file holding the outcome names and any
+ *     properties of the caller, padded to a multiple of 8 bytes
+ * <li>parameters: one double for every predicate and outcome, predicate major
+ * <li>binary weights: for a model with two outcomes, the parameter of the
+ *     first outcome minus that of the second one for every predicate
+ * <li>the predicate hashes, offsets, hash table and characters of the
+ *     {@link PredicateIndex}
+ * </ul>
+ * Only models with a uniform prior are supported, as all models created by
+ * GIS training are.
+ */
+public final class MappedModel implements PredicateIndexedModel {
+
+  private static final int MAGIC = 0x4F4E4D4D;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 32;
+
+  private static final String OUTCOME_PREFIX = "outcome.";
+
+  private final Properties manifest;
+  private final String[] outcomeNames;
+  private final int numOutcomes;
+  private final double prior;
+  private final DoubleBuffer parameters;
+  private final DoubleBuffer binaryWeights;
+  private final PredicateIndex pmap;
+
+  private MappedModel(ByteBuffer buffer) throws IOException {
+    buffer.order(ByteOrder.BIG_ENDIAN);
+    if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+      throw new InvalidFormatException("Not a mapped model file");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new InvalidFormatException("Unsupported mapped model version: " + buffer.getInt(4));
+    }
+    numOutcomes = buffer.getInt(8);
+    int numPredicates = buffer.getInt(12);
+    int tableLength = buffer.getInt(16);
+    int charsLength = buffer.getInt(20);
+    int manifestLength = buffer.getInt(24);
+
+    byte[] manifestBytes = new byte[manifestLength];
+    ByteBuffer manifestBuffer = buffer.duplicate();
+    manifestBuffer.position(HEADER_LENGTH);
+    manifestBuffer.get(manifestBytes);
+    manifest = new Properties();
+    manifest.load(new ByteArrayInputStream(manifestBytes));
+
+    outcomeNames = new String[numOutcomes];
+    for (int i = 0; i < numOutcomes; i++) {
+      outcomeNames[i] = manifest.getProperty(OUTCOME_PREFIX + i);
+      if (outcomeNames[i] == null) {
+        throw new InvalidFormatException("Missing name of outcome " + i);
+      }
+    }
+    prior = Math.log(1.0 / numOutcomes);
+
+    int offset = HEADER_LENGTH + pad(manifestLength);
+    parameters = slice(buffer, offset, numPredicates * numOutcomes * 8).asDoubleBuffer();
+    offset += numPredicates * numOutcomes * 8;
+    if (numOutcomes == 2) {
+      binaryWeights = slice(buffer, offset, numPredicates * 8).asDoubleBuffer();
+      offset += numPredicates * 8;
+    }
+    else {
+      binaryWeights = null;
+    }
+    IntBuffer hashes = slice(buffer, offset, numPredicates * 4).asIntBuffer();
+    offset += numPredicates * 4;
+    IntBuffer offsets = slice(buffer, offset, (numPredicates + 1) * 4).asIntBuffer();
+    offset += (numPredicates + 1) * 4;
+    IntBuffer table = slice(buffer, offset, tableLength * 4).asIntBuffer();
+    offset += tableLength * 4;
+    CharBuffer chars = slice(buffer, offset, charsLength * 2).asCharBuffer();
+    offset += charsLength * 2;
+    if (offset > buffer.capacity()) {
+      throw new InvalidFormatException("Truncated mapped model file");
+    }
+
+    pmap = new PredicateIndex(hashes, offsets, table, chars);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws IOException {
+    if (offset + length > buffer.capacity()) {
+      throw new InvalidFormatException("Truncated mapped model file");
+    }
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset);
+    slice.limit(offset + length);
+    return slice.slice().order(ByteOrder.BIG_ENDIAN);
+  }
+
+  private static int pad(int length) {
+    return (length + 7) & ~7;
+  }
+
+  /**
+   * Maps a model file read-only into memory. The file stays mapped until the
+   * model is garbage collected.
+   */
+  public static MappedModel open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return new MappedModel(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a model from a buffer holding the contents of a model file.
+   */
+  public static MappedModel read(ByteBuffer buffer) throws IOException {
+    return new MappedModel(buffer.duplicate());
+  }
+
+  /**
+   * Writes a model in the mapped model format.
+   *
+   * @param model the model to write
+   * @param properties additional properties stored in the manifest, may be
+   *     <code>null</code>
+   * @param out the stream to write to, it is not closed
+   */
+  public static void write(GISModel model, Properties properties, OutputStream out)
+      throws IOException {
+    Object[] data = model.getDataStructures();
+    Context[] params = (Context[]) data[0];
+    String[] outcomes = (String[]) data[2];
+    PredicateIndex index = model.getPredicateIndex();
+    if (!(model.prior instanceof UniformPrior)) {
+      throw new IllegalArgumentException("Only models with a uniform prior can be mapped");
+    }
+
+    Properties manifest = new Properties();
+    if (properties != null) {
+      manifest.putAll(properties);
+    }
+    for (int i = 0; i < outcomes.length; i++) {
+      manifest.setProperty(OUTCOME_PREFIX + i, outcomes[i]);
+    }
+    ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+    manifest.store(manifestBytes, null);
+
+    DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+    dataOut.writeInt(MAGIC);
+    dataOut.writeInt(VERSION);
+    dataOut.writeInt(outcomes.length);
+    dataOut.writeInt(params.length);
+    dataOut.writeInt(index.tableLength());
+    dataOut.writeInt(index.charsLength());
+    dataOut.writeInt(manifestBytes.size());
+    dataOut.writeInt(0);
+    manifestBytes.writeTo(dataOut);
+    for (int i = manifestBytes.size(); i < pad(manifestBytes.size()); i++) {
+      dataOut.writeByte(0);
+    }
+
+    double[] row = new double[outcomes.length];
+    for (Context context : params) {
+      Arrays.fill(row, 0);
+      int[] activeOutcomes = context.getOutcomes();
+      double[] activeParameters = context.getParameters();
+      for (int ai = 0; ai < activeOutcomes.length; ai++) {
+        row[activeOutcomes[ai]] += activeParameters[ai];
+      }
+      for (double parameter : row) {
+        dataOut.writeDouble(parameter);
+      }
+    }
+    if (outcomes.length == 2) {
+      for (Context context : params) {
+        double weight = 0;
+        int[] activeOutcomes = context.getOutcomes();
+        double[] activeParameters = context.getParameters();
+        for (int ai = 0; ai < activeOutcomes.length; ai++) {
+          weight += activeOutcomes[ai] == 0 ? activeParameters[ai] : -activeParameters[ai];
+        }
+        dataOut.writeDouble(weight);
+      }
+    }
+    index.write(dataOut);
+    dataOut.flush();
+  }
+
+  /**
+   * Writes a model to a file in the mapped model format.
+   *
+   * @see #write(GISModel, Properties, OutputStream)
+   */
+  public static void write(GISModel model, Properties properties, Path path) throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      write(model, properties, out);
+    }
+  }
+
+  /**
+   * @return the properties stored with the model
+   */
+  public Properties getManifest() {
+    return manifest;
+  }
+
+  @Override
+  public PredicateIndex getPredicateIndex() {
+    return pmap;
+  }
+
+  /**
+   * @return for a model with two outcomes the parameter of the first outcome
+   *     minus that of the second one for every predicate, otherwise
+   *     <code>null</code>
+   */
+  DoubleBuffer getBinaryWeights() {
+    return binaryWeights;
+  }
+
+  public double[] eval(String[] context) {
+    return eval(context, null, new double[numOutcomes]);
+  }
+
+  public double[] eval(String[] context, float[] values) {
+    return eval(context, values, new double[numOutcomes]);
+  }
+
+  public double[] eval(String[] context, double[] outsums) {
+    return eval(context, null, outsums);
+  }
+
+  private double[] eval(String[] context, float[] values, double[] outsums) {
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] = prior;
+    }
+    for (int ci = 0; ci < context.length; ci++) {
+      int id = pmap.get(context[ci]);
+      if (id >= 0) {
+        add(id, values == null ? 1 : values[ci], outsums);
+      }
+    }
+    return normalize(outsums);
+  }
+
+  @Override
+  public double[] eval(int[] context, double[] outsums) {
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] = prior;
+    }
+    for (int id : context) {
+      if (id >= 0) {
+        add(id, 1, outsums);
+      }
+    }
+    return normalize(outsums);
+  }
+
+  private void add(int id, double value, double[] outsums) {
+    int base = id * numOutcomes;
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] += parameters.get(base + oid) * value;
+    }
+  }
+
+  private double[] normalize(double[] outsums) {
+    double normal = 0.0;
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] = Math.exp(outsums[oid]);
+      normal += outsums[oid];
+    }
+    for (int oid = 0; oid < numOutcomes; oid++) {
+      outsums[oid] /= normal;
+    }
+    return outsums;
+  }
+
+  public String getBestOutcome(double[] ocs) {
+    int best = 0;
+    for (int i = 1; i < ocs.length; i++)
+      if (ocs[i] > ocs[best]) best = i;
+    return outcomeNames[best];
+  }
+
+  public String getAllOutcomes(double[] ocs) {
+    if (ocs.length != outcomeNames.length) {
+      return "The double array sent as a parameter to MappedModel.getAllOutcomes() " +
+          "must not have been produced by this model.";
+    }
+    else {
+      DecimalFormat df = new DecimalFormat("0.0000");
+      StringBuilder sb = new StringBuilder(ocs.length * 2);
+      sb.append(outcomeNames[0]).append("[").append(df.format(ocs[0])).append("]");
+      for (int i = 1; i < ocs.length; i++) {
+        sb.append("  ").append(outcomeNames[i]).append("[").append(df.format(ocs[i])).append("]");
+      }
+      return sb.toString();
+    }
+  }
+
+  public String getOutcome(int i) {
+    return outcomeNames[i];
+  }
+
+  public int getIndex(String outcome) {
+    for (int i = 0; i < outcomeNames.length; i++) {
+      if (outcomeNames[i].equals(outcome))
+        return i;
+    }
+    return -1;
+  }
+
+  public int getNumOutcomes() {
+    return numOutcomes;
+  }
+}
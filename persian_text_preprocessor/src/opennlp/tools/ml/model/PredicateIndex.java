@@ -0,0 +1,356 @@
+package opennlp.tools.ml.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable mapping from predicate labels to their ids, which can be
+ * queried with a {@link CharSequence} or with a label that is split into a
+ * constant head and a range of a char array, so a lookup never has to build a
+ * String.
+ * <p>
+ * The labels are packed into a single char array and found through an open
+ * addressing table of ids. Every label is kept with its
+ * {@link String#hashCode()}, which lets callers compute the hash of a label
+ * incrementally and compare the characters only when the hashes match.
+ * <p>
+ * The arrays are held in NIO buffers, so an index can also be read in place
+ * from a memory-mapped model file, see {@link MappedModel}.
+ */
+public final class PredicateIndex {
+
+  private final CharBuffer chars;
+  private final IntBuffer offsets;
+  private final IntBuffer hashes;
+  private final IntBuffer table;
+  private final int shift;
+
+  /**
+   * Creates an index in which the label at position i of
+   * <code>labels</code> has the id i. When a label occurs twice the later id
+   * is kept.
+   */
+  public PredicateIndex(String[] labels) {
+    int length = 0;
+    for (String label : labels) {
+      length += label.length();
+    }
+
+    char[] labelChars = new char[length];
+    int[] labelOffsets = new int[labels.length + 1];
+    int[] labelHashes = new int[labels.length];
+    int offset = 0;
+    for (int id = 0; id < labels.length; id++) {
+      String label = labels[id];
+      label.getChars(0, label.length(), labelChars, offset);
+      labelOffsets[id] = offset;
+      labelHashes[id] = label.hashCode();
+      offset += label.length();
+    }
+    labelOffsets[labels.length] = offset;
+
+    // keep the table at most half full
+    int bits = 1;
+    while ((1 << bits) < labels.length * 2) {
+      bits++;
+    }
+
+    this.chars = CharBuffer.wrap(labelChars);
+    this.offsets = IntBuffer.wrap(labelOffsets);
+    this.hashes = IntBuffer.wrap(labelHashes);
+    this.table = IntBuffer.allocate(1 << bits);
+    this.shift = 32 - bits;
+
+    for (int id = 0; id < labels.length; id++) {
+      int mask = table.capacity() - 1;
+      for (int slot = slot(hashes.get(id)); ; slot = (slot + 1) & mask) {
+        int entry = table.get(slot);
+        if (entry == 0 || (hashes.get(entry - 1) == hashes.get(id) && sameLabel(entry - 1, id))) {
+          table.put(slot, id + 1);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates an index over buffers written by {@link #write(DataOutputStream)}.
+   */
+  PredicateIndex(IntBuffer hashes, IntBuffer offsets, IntBuffer table, CharBuffer chars) {
+    this.hashes = hashes;
+    this.offsets = offsets;
+    this.table = table;
+    this.chars = chars;
+    this.shift = 32 - Integer.numberOfTrailingZeros(table.capacity());
+  }
+
+  /**
+   * Creates an index with the labels and ids of a map, whose ids must be
+   * 0 to <code>pmap.size() - 1</code>.
+   */
+  public static PredicateIndex fromMap(Map<String, Integer> pmap) {
+    String[] labels = new String[pmap.size()];
+    for (Map.Entry<String, Integer> entry : pmap.entrySet()) {
+      labels[entry.getValue()] = entry.getKey();
+    }
+    return new PredicateIndex(labels);
+  }
+
+  private int slot(int hash) {
+    return (hash * 0x9E3779B9) >>> shift;
+  }
+
+  private boolean sameLabel(int a, int b) {
+    int length = offsets.get(a + 1) - offsets.get(a);
+    if (length != offsets.get(b + 1) - offsets.get(b)) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (chars.get(offsets.get(a) + i) != chars.get(offsets.get(b) + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the number of labels
+   */
+  public int size() {
+    return hashes.capacity();
+  }
+
+  /**
+   * @return the label with the given id
+   */
+  public String getLabel(int id) {
+    int start = offsets.get(id);
+    int end = offsets.get(id + 1);
+    char[] label = new char[end - start];
+    for (int i = start; i < end; i++) {
+      label[i - start] = chars.get(i);
+    }
+    return new String(label);
+  }
+
+  /**
+   * Looks up the id of a label.
+   *
+   * @return the id of the label or -1 if it is unknown
+   */
+  public int get(CharSequence label) {
+    int hash;
+    if (label instanceof String) {
+      // the String caches its hash code
+      hash = label.hashCode();
+    }
+    else {
+      hash = 0;
+      for (int i = 0; i < label.length(); i++) {
+        hash = 31 * hash + label.charAt(i);
+      }
+    }
+
+    int mask = table.capacity() - 1;
+    for (int slot = slot(hash); ; slot = (slot + 1) & mask) {
+      int entry = table.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      int id = entry - 1;
+      if (hashes.get(id) == hash && offsets.get(id + 1) - offsets.get(id) == label.length()) {
+        int offset = offsets.get(id);
+        int i = 0;
+        while (i < label.length() && chars.get(offset + i) == label.charAt(i)) {
+          i++;
+        }
+        if (i == label.length()) {
+          return id;
+        }
+      }
+    }
+  }
+
+  /**
+   * Looks up the id of the label which consists of <code>head</code>
+   * followed by the characters <code>text[start, end)</code>.
+   *
+   * @param hash the {@link String#hashCode()} of the whole label
+   * @return the id of the label or -1 if it is unknown
+   */
+  public int get(int hash, String head, char[] text, int start, int end) {
+    int headLength = head.length();
+    int length = headLength + end - start;
+
+    int mask = table.capacity() - 1;
+    for (int slot = slot(hash); ; slot = (slot + 1) & mask) {
+      int entry = table.get(slot);
+      if (entry == 0) {
+        return -1;
+      }
+      int id = entry - 1;
+      if (hashes.get(id) == hash && offsets.get(id + 1) - offsets.get(id) == length
+          && matches(offsets.get(id), head, text, start, end)) {
+        return id;
+      }
+    }
+  }
+
+  private boolean matches(int offset, String head, char[] text, int start, int end) {
+    int headLength = head.length();
+    for (int i = 0; i < headLength; i++) {
+      if (chars.get(offset + i) != head.charAt(i)) {
+        return false;
+      }
+    }
+    offset += headLength;
+    for (int i = start; i < end; i++) {
+      if (chars.get(offset++) != text[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the length of the hash table, a power of two
+   */
+  int tableLength() {
+    return table.capacity();
+  }
+
+  /**
+   * @return the total number of characters of all labels
+   */
+  int charsLength() {
+    return chars.capacity();
+  }
+
+  /**
+   * Writes the label hashes, the label offsets, the hash table and the label
+   * characters, in this order.
+   */
+  void write(DataOutputStream out) throws IOException {
+    for (int i = 0; i < hashes.capacity(); i++) {
+      out.writeInt(hashes.get(i));
+    }
+    for (int i = 0; i < offsets.capacity(); i++) {
+      out.writeInt(offsets.get(i));
+    }
+    for (int i = 0; i < table.capacity(); i++) {
+      out.writeInt(table.get(i));
+    }
+    for (int i = 0; i < chars.capacity(); i++) {
+      out.writeChar(chars.get(i));
+    }
+  }
+
+  /**
+   * Returns an unmodifiable view of the index as a map from labels to ids,
+   * for code which still expects the <code>pmap</code> of earlier versions.
+   */
+  public Map<String, Integer> asMap() {
+    return new AbstractMap<String, Integer>() {
+
+      @Override
+      public Integer get(Object key) {
+        if (!(key instanceof CharSequence)) {
+          return null;
+        }
+        int id = PredicateIndex.this.get((CharSequence) key);
+        return id < 0 ? null : id;
+      }
+
+      @Override
+      public boolean containsKey(Object key) {
+        return get(key) != null;
+      }
+
+      @Override
+      public int size() {
+        return countEntries();
+      }
+
+      @Override
+      public Set<Map.Entry<String, Integer>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Integer>>() {
+
+          @Override
+          public int size() {
+            return countEntries();
+          }
+
+          @Override
+          public Iterator<Map.Entry<String, Integer>> iterator() {
+            return new Iterator<Map.Entry<String, Integer>>() {
+              private int slot = advance(0);
+
+              private int advance(int from) {
+                while (from < table.capacity() && table.get(from) == 0) {
+                  from++;
+                }
+                return from;
+              }
+
+              @Override
+              public boolean hasNext() {
+                return slot < table.capacity();
+              }
+
+              @Override
+              public Map.Entry<String, Integer> next() {
+                if (!hasNext()) {
+                  throw new NoSuchElementException();
+                }
+                int id = table.get(slot) - 1;
+                slot = advance(slot + 1);
+                return new AbstractMap.SimpleImmutableEntry<>(getLabel(id), id);
+              }
+            };
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * The number of distinct labels, which is only less than {@link #size()}
+   * if some label occurred twice.
+   */
+  private int countEntries() {
+    int count = 0;
+    for (int i = 0; i < table.capacity(); i++) {
+      if (table.get(i) != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashes.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+
+    if (obj instanceof PredicateIndex) {
+      PredicateIndex index = (PredicateIndex) obj;
+      return offsets.equals(index.offsets) && chars.equals(index.chars);
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,26 @@
+package opennlp.tools.ml.model;
+
+/**
+ * A {@link MaxentModel} which exposes the ids of its predicates, so a context
+ * can be evaluated as an array of ids instead of predicate names.
+ */
+public interface PredicateIndexedModel extends MaxentModel {
+
+  /**
+   * @return the mapping of model predicates to unique integers
+   */
+  PredicateIndex getPredicateIndex();
+
+  /**
+   * Evaluates a context given by the ids of its predicates. Negative ids are
+   * ignored, so a reused buffer can be padded with -1.
+   *
+   * @param context
+   *          The integer values of the predicates which have been observed at
+   *          the present decision point.
+   * @param outsums
+   *          This is where the distribution is stored.
+   * @return The normalized probabilities for the outcomes given the context.
+   */
+  double[] eval(int[] context, double[] outsums);
+}
@@ -0,0 +1,364 @@
+package opennlp.tools.tokenize;
+
+import java.util.Set;
+
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.ml.model.PredicateIndex;
+import opennlp.tools.ml.model.PredicateIndexedModel;
+import opennlp.tools.util.StringUtil;
+
+/**
+ * Produces the features of {@link DefaultTokenContextGenerator} directly as
+ * predicate ids of a {@link PredicateIndexedModel} and evaluates them, without creating any
+ * String.
+ * <p>
+ * The hash of every prefix of the token is computed once per token, so the
+ * hashes of the <code>p=</code> and <code>s=</code> features, and of all the
+ * other features which are a constant followed by a range of the token, are
+ * derived in constant time at every split point. The hashes are those of
+ * {@link String#hashCode()}, which the {@link PredicateIndex} stores for
+ * every predicate. The ids are written in the order in which
+ * {@link DefaultTokenContextGenerator#createContext(String, int)} adds the
+ * features, so the probabilities are exactly those of
+ * <code>model.eval(cg.getContext(token, index))</code>.
+ * <p>
+ * Instances are thread-safe, every thread gets its own buffers. The arrays
+ * returned by {@link #getContext(CharSequence, int)} and the eval methods are
+ * such buffers and are only valid until the next call on the same thread.
+ */
+public class HashedTokenContextGenerator {
+
+  /**
+   * Upper bound on the number of features at one split point.
+   */
+  private static final int MAX_FEATURES = 20;
+
+  private static final int INITIAL_CAPACITY = 32;
+
+  /** Larger buffers of a thread are dropped by {@link #release()}. */
+  private static final int MAX_RETAINED_CAPACITY = 1 << 14;
+
+  private static final String[] CHAR_KEYS = {"p1", "p2", "f1", "f2"};
+  private static final int P1 = 0;
+  private static final int P2 = 1;
+  private static final int F1 = 2;
+  private static final int F2 = 3;
+
+  private static final String[] CHAR_CLASSES =
+      {"_alpha", "_caps", "_num", "_ws", "_eos", "_quote", "_lp", "_rp"};
+  private static final int ALPHA = 0;
+  private static final int CAPS = 1;
+  private static final int NUM = 2;
+  private static final int WS = 3;
+  private static final int EOS = 4;
+  private static final int QUOTE = 5;
+  private static final int LP = 6;
+  private static final int RP = 7;
+
+  private static final String PREFIX = "p=";
+  private static final String SUFFIX = "s=";
+  private static final String P21 = "p21=";
+  private static final String P1F1 = "p1f1=";
+  private static final String F12 = "f12=";
+
+  private final PredicateIndexedModel model;
+  private final PredicateIndex index;
+  private final Set<String> inducedAbbreviations;
+
+  private final String[] charHeads = new String[CHAR_KEYS.length];
+  private final int[][] charClassIds = new int[CHAR_KEYS.length][CHAR_CLASSES.length];
+  private final int p1Bok;
+  private final int p2Bok;
+  private final int f2Bok;
+  private final int cc;
+  private final int pabb;
+
+  private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+  public HashedTokenContextGenerator(PredicateIndexedModel model, Set<String> inducedAbbreviations) {
+    this.model = model;
+    this.index = model.getPredicateIndex();
+    this.inducedAbbreviations = inducedAbbreviations;
+
+    for (int k = 0; k < CHAR_KEYS.length; k++) {
+      charHeads[k] = CHAR_KEYS[k] + "=";
+      for (int c = 0; c < CHAR_CLASSES.length; c++) {
+        charClassIds[k][c] = index.get(CHAR_KEYS[k] + CHAR_CLASSES[c]);
+      }
+    }
+    p1Bok = index.get("p1=bok");
+    p2Bok = index.get("p2=bok");
+    f2Bok = index.get("f2=bok");
+    cc = index.get("cc");
+    pabb = index.get("pabb");
+  }
+
+  /**
+   * Creates a generator for the model if it produces the same features as
+   * the given context generator.
+   *
+   * @return the generator, or <code>null</code> if the model is not a
+   *     {@link PredicateIndexedModel} or <code>cg</code> is not exactly a
+   *     {@link DefaultTokenContextGenerator}
+   */
+  public static HashedTokenContextGenerator create(MaxentModel model, TokenContextGenerator cg) {
+    if (model instanceof PredicateIndexedModel && cg != null
+        && cg.getClass() == DefaultTokenContextGenerator.class) {
+      return new HashedTokenContextGenerator((PredicateIndexedModel) model,
+          ((DefaultTokenContextGenerator) cg).inducedAbbreviations);
+    }
+    return null;
+  }
+
+  /**
+   * Returns the predicate ids of the features of the token at the specified
+   * index. Features the model does not know are -1, as are the unused
+   * entries at the end of the array.
+   */
+  public int[] getContext(CharSequence token, int index) {
+    Workspace ws = workspaces.get();
+    ws.set(token);
+    fill(ws, 0, ws.length, index);
+    return ws.ids;
+  }
+
+  /**
+   * Returns the predicate ids of the features at the boundary of the two
+   * tokens written next to each other, like
+   * <code>getContext(left + right, left.length())</code>.
+   */
+  public int[] getContext(CharSequence left, CharSequence right) {
+    Workspace ws = workspaces.get();
+    ws.set(left, right);
+    fill(ws, 0, ws.length, left.length());
+    return ws.ids;
+  }
+
+  /**
+   * Returns the predicate ids of the features of the token
+   * <code>text[start, end)</code> at the position <code>index</code> of the
+   * text, like
+   * <code>getContext(text.subSequence(start, end), index - start)</code>.
+   * The prefix hashes cover the whole text and are kept while the same
+   * String is passed, so any number of tokens of one text can be scored
+   * after hashing it once.
+   */
+  public int[] getContext(CharSequence text, int start, int end, int index) {
+    Workspace ws = workspaces.get();
+    ws.set(text);
+    fill(ws, start, end, index);
+    return ws.ids;
+  }
+
+  /**
+   * Evaluates the model at the specified index of the token. The prefix
+   * hashes are only recomputed when the token is not the same object as in
+   * the previous call, so scoring all split points of a token costs linear
+   * time for hashing.
+   *
+   * @return the probabilities of the outcomes
+   */
+  public double[] eval(CharSequence token, int index) {
+    Workspace ws = workspaces.get();
+    ws.set(token);
+    fill(ws, 0, ws.length, index);
+    return model.eval(ws.ids, ws.outsums);
+  }
+
+  /**
+   * Evaluates the model at the boundary of the two tokens written next to
+   * each other, like <code>eval(left + right, left.length())</code>.
+   */
+  public double[] eval(CharSequence left, CharSequence right) {
+    Workspace ws = workspaces.get();
+    ws.set(left, right);
+    fill(ws, 0, ws.length, left.length());
+    return model.eval(ws.ids, ws.outsums);
+  }
+
+  /**
+   * Evaluates the model for the token <code>text[start, end)</code> at the
+   * position <code>index</code> of the text.
+   *
+   * @see #getContext(CharSequence, int, int, int)
+   */
+  public double[] eval(CharSequence text, int start, int end, int index) {
+    Workspace ws = workspaces.get();
+    ws.set(text);
+    fill(ws, start, end, index);
+    return model.eval(ws.ids, ws.outsums);
+  }
+
+  /**
+   * Lets go of the text hashed by the calling thread and drops its buffers
+   * if a long text grew them, so a thread which once hashed a whole document
+   * does not keep it or about 10 bytes per character of it. The next call
+   * hashes its text again.
+   */
+  public void release() {
+    workspaces.get().release();
+  }
+
+  /**
+   * Writes the features of the token <code>chars[start, end)</code> at the
+   * position <code>at</code> of the workspace.
+   */
+  private void fill(Workspace ws, int start, int end, int at) {
+    char[] chars = ws.chars;
+    int[] ids = ws.ids;
+    int n = 0;
+
+    ids[n++] = lookup(ws, PREFIX, start, at);
+    ids[n++] = lookup(ws, SUFFIX, at, end);
+    if (at > start) {
+      n = addCharPreds(ws, P1, at - 1, n);
+      if (at > start + 1) {
+        n = addCharPreds(ws, P2, at - 2, n);
+        ids[n++] = lookup(ws, P21, at - 2, at);
+      }
+      else {
+        ids[n++] = p2Bok;
+      }
+      ids[n++] = lookup(ws, P1F1, at - 1, at + 1);
+    }
+    else {
+      ids[n++] = p1Bok;
+    }
+    n = addCharPreds(ws, F1, at, n);
+    if (at + 1 < end) {
+      n = addCharPreds(ws, F2, at + 1, n);
+      ids[n++] = lookup(ws, F12, at, at + 2);
+    }
+    else {
+      ids[n++] = f2Bok;
+    }
+    if (chars[start] == '&' && chars[end - 1] == ';') {
+      ids[n++] = cc;
+    }
+
+    if (at == end - 1 && !inducedAbbreviations.isEmpty()
+        && inducedAbbreviations.contains(new String(chars, start, end - start))) {
+      ids[n++] = pabb;
+    }
+
+    while (n < ids.length) {
+      ids[n++] = -1;
+    }
+  }
+
+  private int lookup(Workspace ws, String head, int start, int end) {
+    int[] pow = ws.pow;
+    int[] prefixHashes = ws.prefixHashes;
+    int hash = head.hashCode() * pow[end - start]
+        + prefixHashes[end] - prefixHashes[start] * pow[end - start];
+    return index.get(hash, head, ws.chars, start, end);
+  }
+
+  private int addCharPreds(Workspace ws, int key, int at, int n) {
+    int[] ids = ws.ids;
+    int[] classIds = charClassIds[key];
+    char c = ws.chars[at];
+
+    ids[n++] = lookup(ws, charHeads[key], at, at + 1);
+    if (Character.isLetter(c)) {
+      ids[n++] = classIds[ALPHA];
+      if (Character.isUpperCase(c)) {
+        ids[n++] = classIds[CAPS];
+      }
+    }
+    else if (Character.isDigit(c)) {
+      ids[n++] = classIds[NUM];
+    }
+    else if (StringUtil.isWhitespace(c)) {
+      ids[n++] = classIds[WS];
+    }
+    else {
+      if (c == '.' || c == '?' || c == '!') {
+        ids[n++] = classIds[EOS];
+      }
+      else if (c == '`' || c == '"' || c == '\'') {
+        ids[n++] = classIds[QUOTE];
+      }
+      else if (c == '[' || c == '{' || c == '(') {
+        ids[n++] = classIds[LP];
+      }
+      else if (c == ']' || c == '}' || c == ')') {
+        ids[n++] = classIds[RP];
+      }
+    }
+    return n;
+  }
+
+  /**
+   * The buffers of one thread: the characters of the current token, the
+   * hashes of its prefixes and the powers of 31 needed to combine them.
+   */
+  private final class Workspace {
+    char[] chars = new char[INITIAL_CAPACITY];
+    int length;
+    int[] prefixHashes = new int[INITIAL_CAPACITY + 1];
+    int[] pow = new int[INITIAL_CAPACITY + 1];
+    int powLength;
+    CharSequence current;
+
+    final int[] ids = new int[MAX_FEATURES];
+    final double[] outsums = new double[model.getNumOutcomes()];
+
+    void set(CharSequence token) {
+      // a String cannot have changed since the previous call
+      if (token instanceof String && token == current) {
+        return;
+      }
+      release();
+      append(token);
+      current = token;
+    }
+
+    void set(CharSequence left, CharSequence right) {
+      release();
+      append(left);
+      append(right);
+      current = null;
+    }
+
+    void release() {
+      current = null;
+      length = 0;
+      if (chars.length > MAX_RETAINED_CAPACITY) {
+        chars = new char[INITIAL_CAPACITY];
+        prefixHashes = new int[INITIAL_CAPACITY + 1];
+        pow = new int[INITIAL_CAPACITY + 1];
+        powLength = 0;
+      }
+    }
+
+    private void append(CharSequence text) {
+      int end = length + text.length();
+      if (end > chars.length) {
+        int capacity = Math.max(end, chars.length * 2);
+        char[] newChars = new char[capacity];
+        System.arraycopy(chars, 0, newChars, 0, length);
+        chars = newChars;
+        int[] newHashes = new int[capacity + 1];
+        System.arraycopy(prefixHashes, 0, newHashes, 0, length + 1);
+        prefixHashes = newHashes;
+        int[] newPow = new int[capacity + 1];
+        System.arraycopy(pow, 0, newPow, 0, powLength);
+        pow = newPow;
+      }
+      for (int i = length; i < end; i++) {
+        char c = text.charAt(i - length);
+        chars[i] = c;
+        prefixHashes[i + 1] = 31 * prefixHashes[i] + c;
+      }
+      length = end;
+      if (powLength == 0) {
+        pow[powLength++] = 1;
+      }
+      while (powLength <= length) {
+        pow[powLength] = 31 * pow[powLength - 1];
+        powLength++;
+      }
+    }
+  }
+}
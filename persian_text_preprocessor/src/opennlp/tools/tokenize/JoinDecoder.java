@@ -0,0 +1,247 @@
+package opennlp.tools.tokenize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.util.Span;
+
+/**
+ * Decides which of the whitespace separated tokens of a text are joined.
+ * <p>
+ * The spaces are removed from the text once and every token is kept as a
+ * pair of offsets into the result, so a group of adjacent tokens is a range
+ * of one String and the join model is asked about a boundary without
+ * building the joined token. Other whitespace between two tokens stays part
+ * of their group, as it did when the groups were rebuilt with
+ * <code>replaceAll(" ", "")</code>.
+ * <p>
+ * Instances hold the offsets of one text and are not thread-safe.
+ */
+final class JoinDecoder {
+
+  /**
+   * Scores a boundary inside a range of the text of the decoder.
+   */
+  interface Scorer {
+
+    /**
+     * @return the probability that the token <code>text[start, end)</code>
+     *     is split at the position <code>index</code> of the text
+     */
+    double splitProb(String text, int start, int end, int index);
+
+    /**
+     * Tells whether splitting is the best outcome for a probability returned
+     * by {@link #splitProb(String, int, int, int)}.
+     */
+    boolean isSplit(double p);
+  }
+
+  private final String text;
+  private final int[] starts;
+  private final int[] ends;
+  private final int count;
+
+  JoinDecoder(String d) {
+    Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
+    StringBuilder sb = new StringBuilder(d.length());
+    count = tokens.length;
+    starts = new int[count];
+    ends = new int[count];
+
+    int from = 0;
+    for (int t = 0; t < count; t++) {
+      for (int i = from; i < tokens[t].getStart(); i++) {
+        char c = d.charAt(i);
+        if (c != ' ') {
+          sb.append(c);
+        }
+      }
+      starts[t] = sb.length();
+      sb.append(d, tokens[t].getStart(), tokens[t].getEnd());
+      ends[t] = sb.length();
+      from = tokens[t].getEnd();
+    }
+    text = sb.toString();
+  }
+
+  /**
+   * @return the number of tokens of the text
+   */
+  int size() {
+    return count;
+  }
+
+  private void group(int first, int last, TokenSink out) {
+    out.token(text, starts[first], ends[last]);
+  }
+
+  private void group(int first, int last, double prob, TokenSink out) {
+    if (out.recordsProbabilities()) {
+      out.token(text, starts[first], ends[last], prob);
+    }
+    else {
+      out.token(text, starts[first], ends[last]);
+    }
+  }
+
+  private static String[] toArray(List<String> groups) {
+    return groups.toArray(new String[groups.size()]);
+  }
+
+  private double splitProb(Scorer scorer, int first, int last) {
+    return scorer.splitProb(text, starts[first], ends[last + 1], ends[last]);
+  }
+
+  /**
+   * Joins the tokens greedily from left to right, as
+   * {@link TokenizerME#join(String)} always did: the current group is joined
+   * with the next token if the model says so and is more confident about it
+   * than about the boundary after that token, or if that boundary is split.
+   * Every boundary is scored at most twice.
+   */
+  String[] greedy(Scorer scorer) {
+    List<String> groups = new ArrayList<>(count);
+    greedy(scorer, (text, start, end) -> groups.add(text.subSequence(start, end).toString()));
+    return toArray(groups);
+  }
+
+  /**
+   * Joins the tokens like {@link #greedy(Scorer)} and hands every group to
+   * <code>out</code> as a range of the text, without building a String. The
+   * probability of a group is the one of the join decisions inside it.
+   */
+  void greedy(Scorer scorer, TokenSink out) {
+    if (count < 2) {
+      if (count == 1) {
+        group(0, 0, out);
+      }
+      return;
+    }
+
+    int first = 0;
+    int last = 0;
+    double groupProb = 1.0;
+
+    double p = splitProb(scorer, 0, 0);
+    boolean prevSplit = scorer.isSplit(p);
+    double prevTokenProb = prevSplit ? p : 1 - p;
+
+    // the group is [first, last] and next = last + 1 is the token right of it
+    for (int next = 1; next < count - 1; next++) {
+      p = splitProb(scorer, next, next);
+      boolean split = scorer.isSplit(p);
+      double tokenProb = split ? p : 1 - p;
+
+      if (!prevSplit && (split || prevTokenProb > tokenProb)) {
+        last = next;
+        groupProb *= prevTokenProb;
+        p = splitProb(scorer, first, last);
+        split = scorer.isSplit(p);
+        tokenProb = split ? p : 1 - p;
+      }
+      else {
+        group(first, last, groupProb, out);
+        first = next;
+        last = next;
+        groupProb = 1.0;
+      }
+      prevSplit = split;
+      prevTokenProb = tokenProb;
+    }
+
+    if (!prevSplit) {
+      group(first, count - 1, groupProb * prevTokenProb, out);
+    }
+    else {
+      group(first, last, groupProb, out);
+      group(count - 1, count - 1, 1.0, out);
+    }
+  }
+
+  /**
+   * Joins the tokens into the groups of at most <code>maxGroupSize</code>
+   * tokens with the highest joint probability of all join and split
+   * decisions, found with a Viterbi pass. The state at a token is the first
+   * token of its group, so every boundary is scored at most
+   * <code>maxGroupSize</code> times, once for every group which can end at
+   * it.
+   */
+  String[] best(Scorer scorer, int maxGroupSize) {
+    List<String> groups = new ArrayList<>(count);
+    best(scorer, maxGroupSize, (text, start, end) -> groups.add(text.subSequence(start, end).toString()));
+    return toArray(groups);
+  }
+
+  /**
+   * Joins the tokens like {@link #best(Scorer, int)} and hands every group
+   * to <code>out</code> as a range of the text, without building a String.
+   */
+  void best(Scorer scorer, int maxGroupSize, TokenSink out) {
+    if (maxGroupSize < 1) {
+      throw new IllegalArgumentException("maxGroupSize must be positive: " + maxGroupSize);
+    }
+    if (count < 2) {
+      if (count == 1) {
+        group(0, 0, out);
+      }
+      return;
+    }
+
+    // score[j]: the best log probability of the decisions up to the current
+    // token when its group started j tokens before it
+    double[] score = new double[maxGroupSize];
+    double[] nextScore = new double[maxGroupSize];
+    // previous[i]: the first token of the best group before a group starting at i
+    int[] previous = new int[count];
+    Arrays.fill(score, Double.NEGATIVE_INFINITY);
+    score[0] = 0;
+
+    for (int last = 0; last < count - 1; last++) {
+      Arrays.fill(nextScore, Double.NEGATIVE_INFINITY);
+      double bestSplit = Double.NEGATIVE_INFINITY;
+      int bestFirst = -1;
+      for (int j = 0; j < maxGroupSize && j <= last; j++) {
+        double p = splitProb(scorer, last - j, last);
+        double split = score[j] + Math.log(p);
+        if (bestFirst < 0 || split > bestSplit) {
+          bestSplit = split;
+          bestFirst = last - j;
+        }
+        if (j + 1 < maxGroupSize) {
+          nextScore[j + 1] = score[j] + Math.log(1 - p);
+        }
+      }
+      nextScore[0] = bestSplit;
+      previous[last + 1] = bestFirst;
+
+      double[] swap = score;
+      score = nextScore;
+      nextScore = swap;
+    }
+
+    int bestJ = 0;
+    for (int j = 1; j < maxGroupSize && j < count; j++) {
+      if (score[j] > score[bestJ]) {
+        bestJ = j;
+      }
+    }
+
+    // the first tokens of the groups, from the last group to the first
+    int[] firsts = new int[count];
+    int n = 0;
+    int first = count - 1 - bestJ;
+    while (true) {
+      firsts[n++] = first;
+      if (first == 0) {
+        break;
+      }
+      first = previous[first];
+    }
+
+    for (int i = n - 1; i >= 0; i--) {
+      group(firsts[i], i == 0 ? count - 1 : firsts[i - 1] - 1, out);
+    }
+  }
+}
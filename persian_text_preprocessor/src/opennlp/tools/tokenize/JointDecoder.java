@@ -0,0 +1,414 @@
+package opennlp.tools.tokenize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import opennlp.tools.util.Span;
+
+/**
+ * Splits, inserts half spaces and joins tokens in one left-to-right pass,
+ * with the result of
+ * <code>tokenizer.join(halfSpaceChecker.normalize(tokenizer.split(d)))</code>.
+ * <p>
+ * The three steps are greedy decoders which look at most one token ahead,
+ * so they are chained as stages: every part the tokenizer splits off is
+ * handed to the half space stage, and every token that stage completes is
+ * handed to the join stage. The text is tokenized on whitespace once, and
+ * no intermediate array or string of the whole text is built.
+ * <p>
+ * With a {@link VerbJoiner} the whitespace separated tokens first pass a
+ * verb stage, which settles the parts of conjugated verbs by rule. The
+ * verbs it joins, spells or keeps apart are passed on as they are, after
+ * the tokens before them, and the models are not asked about them. A
+ * settled verb is a fixed boundary for the other stages: it is never joined
+ * with a neighbour, but it is still the token they look ahead at to decide
+ * about the tokens before it, so those are decided as without the rules.
+ * <p>
+ * Instances are thread-safe if the tokenizer and the half space checker
+ * are, the state of a text is kept in its {@link Pass}.
+ */
+public class JointDecoder {
+
+  private static final char ZWNJ = '\u200C';
+
+  private final TokenizerME tokenizer;
+  private final PersianHalfSpaceChecker halfSpaceChecker;
+  private final VerbJoiner verbJoiner;
+
+  public JointDecoder(TokenizerME tokenizer, PersianHalfSpaceChecker halfSpaceChecker) {
+    this(tokenizer, halfSpaceChecker, null);
+  }
+
+  /**
+   * @param verbJoiner the rules for verbs, or <code>null</code> to leave
+   *     verbs to the models
+   */
+  public JointDecoder(TokenizerME tokenizer, PersianHalfSpaceChecker halfSpaceChecker,
+      VerbJoiner verbJoiner) {
+    this.tokenizer = tokenizer;
+    this.halfSpaceChecker = halfSpaceChecker;
+    this.verbJoiner = verbJoiner;
+  }
+
+  /**
+   * Decodes the text.
+   *
+   * @param d the text to tokenize
+   * @return the tokens
+   */
+  public String[] decode(String d) {
+    List<String> tokens = new ArrayList<>();
+    decode(d, start(tokens::add));
+    return tokens.toArray(new String[tokens.size()]);
+  }
+
+  /**
+   * Decodes the text and hands the tokens to a sink, for example a
+   * {@link TokenBuffer}. If the sink {@link TokenSink#recordsProbabilities()
+   * records probabilities}, every token is handed over with the product of
+   * the probabilities of the decisions that made it.
+   *
+   * @param d the text to tokenize
+   * @param out receives the tokens in order
+   */
+  public void decode(String d, TokenSink out) {
+    decode(d, start(out));
+  }
+
+  private void decode(String d, Pass pass) {
+    for (Span span : WhitespaceTokenizer.INSTANCE.tokenizePos(d)) {
+      pass.accept(d.substring(span.getStart(), span.getEnd()));
+    }
+    pass.finish();
+  }
+
+  /**
+   * Starts decoding a text which is passed to the returned {@link Pass} one
+   * whitespace separated token at a time, so a text can be decoded while it
+   * is read.
+   *
+   * @param out receives the tokens in order, most of them before the text
+   *     is finished
+   */
+  public Pass start(Consumer<String> out) {
+    return new Pass(out, null);
+  }
+
+  /**
+   * Starts decoding a text like {@link #start(Consumer)}, handing the tokens
+   * to a sink with their probabilities if it records them.
+   *
+   * @param out receives the tokens in order, most of them before the text
+   *     is finished
+   */
+  public Pass start(TokenSink out) {
+    return new Pass(null, out);
+  }
+
+  /**
+   * The state of decoding one text. A token is passed on as soon as no
+   * later token can change it, which is at most two tokens later.
+   */
+  public final class Pass {
+
+    private final Consumer<String> out;
+    private final TokenSink sink;
+    private final Consumer<String> halfSpaceStage = this::halfSpace;
+    private boolean finished;
+
+    // the probabilities of the decisions are only kept if the sink asks for
+    // them: partProbs holds the one of the last part split off, the others
+    // the ones of the tokens held by the stages below
+    private final boolean record;
+    private final ProbabilityList partProbs;
+
+    // the verb stage: the last whitespace separated token, and whether the
+    // verb rules already settled it
+    private String pending;
+    private boolean pendingSettled;
+
+    // the half space stage: left and right are the last two tokens, left
+    // possibly joined from several, and hsSplit and hsProb the decision
+    // about a half space between them
+    private String hsLeft;
+    private String hsRight;
+    private boolean hsSplit;
+    private double hsProb;
+    private double hsLeftProb;
+    private double hsRightProb;
+
+    // the join stage: group is the current group of tokens, next the token
+    // after it and the decision is about the boundary between them
+    private final StringBuilder group = new StringBuilder();
+    private boolean hasGroup;
+    private String next;
+    private boolean joinSplit;
+    private double joinProb;
+    private double groupProb;
+    private double nextProb;
+
+    private Pass(Consumer<String> out, TokenSink sink) {
+      this.out = out;
+      this.sink = sink;
+      record = sink != null && sink.recordsProbabilities();
+      partProbs = record ? new ProbabilityList() : null;
+    }
+
+    /**
+     * Decodes the next whitespace separated token of the text.
+     *
+     * @param token a token without whitespace
+     */
+    public void accept(String token) {
+      if (finished) {
+        throw new IllegalStateException("The pass is finished");
+      }
+      if (verbJoiner == null) {
+        split(token);
+        return;
+      }
+      verb(token);
+    }
+
+    /**
+     * Ends the text and passes on the remaining tokens.
+     */
+    public void finish() {
+      if (finished) {
+        return;
+      }
+      finished = true;
+
+      if (pending != null) {
+        decide(pending, pendingSettled);
+        pending = null;
+      }
+      flush(null);
+    }
+
+    /**
+     * Passes on the tokens held by the half space and join stages and
+     * empties them, as if no token after them could be joined with them.
+     *
+     * @param lookahead the token after them, which the stages compare their
+     *     last decision with, or <code>null</code> at the end of the text
+     */
+    private void flush(String lookahead) {
+      if (hsRight == null) {
+        if (hsLeft != null) {
+          join(hsLeft, hsLeftProb);
+        }
+      }
+      else if (hsSplit && (lookahead == null
+          || isLastHalfSpace(halfSpaceChecker.checkJoin(hsRight, lookahead)))) {
+        join(hsLeft + ZWNJ + hsRight, hsLeftProb * hsRightProb * hsProb);
+      }
+      else {
+        join(hsLeft, hsLeftProb);
+        join(hsRight, hsRightProb);
+      }
+
+      if (next == null) {
+        if (hasGroup) {
+          emit(group.toString(), groupProb);
+        }
+      }
+      else if (!joinSplit && (lookahead == null
+          || isLastJoin(tokenizer.splitProb(next, lookahead)))) {
+        emit(group.append(next).toString(), groupProb * nextProb * joinProb);
+      }
+      else {
+        emit(group.toString(), groupProb);
+        emit(next, nextProb);
+      }
+
+      hsLeft = null;
+      hsRight = null;
+      group.setLength(0);
+      hasGroup = false;
+      next = null;
+    }
+
+    /**
+     * Decides about the pending token once the token after it is known: the
+     * two are joined if they are the parts of one verb form, and a pair of
+     * verb parts which are written apart is settled as it is.
+     */
+    private void verb(String token) {
+      if (pending == null) {
+        pending = token;
+        pendingSettled = false;
+        return;
+      }
+
+      String joined = verbJoiner.join(pending, token);
+      if (joined != null) {
+        settled(joined);
+        pending = null;
+      }
+      else if (verbJoiner.isSeparate(pending, token)) {
+        settled(pending);
+        pending = token;
+        pendingSettled = true;
+      }
+      else {
+        decide(pending, pendingSettled);
+        pending = token;
+        pendingSettled = false;
+      }
+    }
+
+    private void decide(String token, boolean isSettled) {
+      String form = isSettled ? token : verbJoiner.spell(token);
+      if (form != null) {
+        settled(form);
+      }
+      else {
+        split(token);
+      }
+    }
+
+    private void split(String token) {
+      if (record) {
+        partProbs.clear();
+      }
+      tokenizer.splitToken(token, partProbs, halfSpaceStage);
+    }
+
+    /**
+     * Passes on a token settled by the verb rules, after the tokens before it,
+     * which are decided with the token as the one after them.
+     */
+    private void settled(String token) {
+      flush(token);
+      emit(token, 1.0);
+    }
+
+    private void emit(String token, double prob) {
+      if (sink == null) {
+        out.accept(token);
+      }
+      else if (record) {
+        sink.token(token, 0, token.length(), prob);
+      }
+      else {
+        sink.token(token, 0, token.length());
+      }
+    }
+
+    /**
+     * Like {@link PersianHalfSpaceChecker#normalize(String[])}: the pair of
+     * tokens with a half space decision is joined if the model is more
+     * confident about it than about the following pair, or if the
+     * following pair is not joined.
+     */
+    private void halfSpace(String part) {
+      String token;
+      double prob = 1.0;
+      if (record) {
+        PersianHalfSpaceChecker.WordDecision word = halfSpaceChecker.checkToken(part);
+        token = word.text;
+        prob = partProbs.last() * word.prob;
+      }
+      else {
+        token = halfSpaceChecker.normalizeWord(part);
+      }
+
+      if (hsLeft == null) {
+        hsLeft = token;
+        hsLeftProb = prob;
+        return;
+      }
+      if (hsRight == null) {
+        hsRight = token;
+        hsRightProb = prob;
+        setHalfSpaceDecision(halfSpaceChecker.checkJoin(hsLeft, hsRight));
+        return;
+      }
+
+      PersianHalfSpaceChecker.JoinDecision following = halfSpaceChecker.checkJoin(hsRight, token);
+      if (hsSplit && isLastHalfSpace(following)) {
+        hsLeft = hsLeft + ZWNJ + hsRight;
+        hsLeftProb *= hsRightProb * hsProb;
+        setHalfSpaceDecision(halfSpaceChecker.checkJoin(hsLeft, token));
+      }
+      else {
+        join(hsLeft, hsLeftProb);
+        hsLeft = hsRight;
+        hsLeftProb = hsRightProb;
+        setHalfSpaceDecision(following);
+      }
+      hsRight = token;
+      hsRightProb = prob;
+    }
+
+    /**
+     * Tells whether the half space between the last two tokens wins over the
+     * decision about the following pair, given that the model decided for it.
+     */
+    private boolean isLastHalfSpace(PersianHalfSpaceChecker.JoinDecision following) {
+      return !following.split || hsProb > following.prob;
+    }
+
+    private void setHalfSpaceDecision(PersianHalfSpaceChecker.JoinDecision decision) {
+      hsSplit = decision.split;
+      hsProb = decision.prob;
+    }
+
+    /**
+     * Like {@link TokenizerME#join(String)}: the group is joined with the
+     * next token if the model decides not to split them and is more
+     * confident about it than about the boundary after that token, or if
+     * that boundary is split.
+     */
+    private void join(String token, double tokenProb) {
+      if (!hasGroup) {
+        group.append(token);
+        groupProb = tokenProb;
+        hasGroup = true;
+        return;
+      }
+      if (next == null) {
+        next = token;
+        nextProb = tokenProb;
+        setJoinDecision(tokenizer.splitProb(group, next));
+        return;
+      }
+
+      double p = tokenizer.splitProb(next, token);
+      boolean split = tokenizer.isSplit(p);
+      double prob = split ? p : 1 - p;
+      if (!joinSplit && isLastJoin(p)) {
+        group.append(next);
+        groupProb *= nextProb * joinProb;
+        setJoinDecision(tokenizer.splitProb(group, token));
+      }
+      else {
+        emit(group.toString(), groupProb);
+        group.setLength(0);
+        group.append(next);
+        groupProb = nextProb;
+        joinSplit = split;
+        joinProb = prob;
+      }
+      next = token;
+      nextProb = tokenProb;
+    }
+
+    /**
+     * Tells whether joining the group with the next token wins over the
+     * decision about the boundary after it, whose split probability is
+     * <code>p</code>, given that the model decided for the join.
+     */
+    private boolean isLastJoin(double p) {
+      boolean split = tokenizer.isSplit(p);
+      return split || joinProb > (split ? p : 1 - p);
+    }
+
+    private void setJoinDecision(double p) {
+      joinSplit = tokenizer.isSplit(p);
+      joinProb = joinSplit ? p : 1 - p;
+    }
+  }
+}
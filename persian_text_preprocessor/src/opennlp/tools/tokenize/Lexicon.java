@@ -0,0 +1,178 @@
+package opennlp.tools.tokenize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.util.DoubleArrayTrie;
+
+/**
+ * A lexicon of correctly written word forms, such as
+ * <code>resources/data/words.dat</code>, which lets the tokenizer and the
+ * half space checker settle known words and known joins by lookup instead of
+ * evaluating their models.
+ * <p>
+ * The words are kept in a {@link DoubleArrayTrie}, so two tokens are looked
+ * up as one word, with or without a half space between them, by walking the
+ * trie over both of them without building the joined String. A lexicon file
+ * is created with <code>Lexicon &lt;words.dat&gt; &lt;lexicon file&gt;</code>
+ * and memory-mapped by {@link #open(Path)}.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class Lexicon {
+
+  /**
+   * The zero-width non-joiner, the Persian half space.
+   */
+  static final char ZWNJ = '\u200C';
+
+  private final DoubleArrayTrie trie;
+
+  public Lexicon(DoubleArrayTrie trie) {
+    this.trie = trie;
+  }
+
+  /**
+   * Memory-maps a lexicon file written by {@link #write(Path)}.
+   */
+  public static Lexicon open(Path path) throws IOException {
+    return new Lexicon(DoubleArrayTrie.open(path));
+  }
+
+  /**
+   * Reads a word list with one word per line. Blank lines and the lines of
+   * compound verb parts, which contain a <code>#</code>, are skipped.
+   */
+  public static Lexicon read(Reader words) throws IOException {
+    List<String> keys = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(words);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      line = line.replace("\uFEFF", "").trim();
+      if (!line.isEmpty() && line.indexOf('#') < 0) {
+        keys.add(line);
+      }
+    }
+    return new Lexicon(DoubleArrayTrie.build(keys));
+  }
+
+  /**
+   * Writes the lexicon in the format read by {@link #open(Path)}.
+   */
+  public void write(Path path) throws IOException {
+    trie.write(path);
+  }
+
+  /**
+   * @return the number of words
+   */
+  public int size() {
+    return trie.size();
+  }
+
+  /**
+   * Tells whether the word is in the lexicon.
+   */
+  public boolean contains(CharSequence word) {
+    return trie.contains(word);
+  }
+
+  /**
+   * Tells whether <code>text[start, end)</code> is a word of the lexicon.
+   */
+  public boolean contains(CharSequence text, int start, int end) {
+    int state = trie.next(DoubleArrayTrie.ROOT, text, start, end);
+    return state >= 0 && trie.isKey(state);
+  }
+
+  /**
+   * Tells whether the two tokens written next to each other are a word of
+   * the lexicon.
+   */
+  public boolean containsJoined(CharSequence left, CharSequence right) {
+    int state = trie.next(DoubleArrayTrie.ROOT, left, 0, left.length());
+    state = trie.next(state, right, 0, right.length());
+    return state >= 0 && trie.isKey(state);
+  }
+
+  /**
+   * Tells whether the two tokens joined with a half space are a word of the
+   * lexicon.
+   */
+  public boolean containsHalfSpaced(CharSequence left, CharSequence right) {
+    int state = trie.next(DoubleArrayTrie.ROOT, left, 0, left.length());
+    if (state >= 0) {
+      state = trie.next(state, ZWNJ);
+    }
+    state = trie.next(state, right, 0, right.length());
+    return state >= 0 && trie.isKey(state);
+  }
+
+  /**
+   * Returns how the token is written in the lexicon: the token itself if it
+   * is a word, otherwise the only word which is the token with half spaces
+   * inserted between some of its characters.
+   *
+   * @return the word, or <code>null</code> if the lexicon has no such word
+   *     or more than one
+   */
+  public String spell(String token) {
+    if (contains(token)) {
+      return token;
+    }
+    String[] found = new String[2];
+    spell(token, 0, DoubleArrayTrie.ROOT, new char[token.length() * 2], 0, found);
+    return found[1] == null ? found[0] : null;
+  }
+
+  /**
+   * Finds up to two words which spell <code>token[i, length)</code> after
+   * the state, writing the characters of the word so far into
+   * <code>form</code>.
+   */
+  private void spell(String token, int i, int state, char[] form, int length, String[] found) {
+    if (found[1] != null) {
+      return;
+    }
+    if (i == token.length()) {
+      if (trie.isKey(state)) {
+        found[found[0] == null ? 0 : 1] = new String(form, 0, length);
+      }
+      return;
+    }
+
+    char c = token.charAt(i);
+    int next = trie.next(state, c);
+    if (next >= 0) {
+      form[length] = c;
+      spell(token, i + 1, next, form, length + 1, found);
+    }
+    // a half space can be inserted between two characters which are not half spaces
+    if (i > 0 && c != ZWNJ && form[length - 1] != ZWNJ) {
+      int halfSpace = trie.next(state, ZWNJ);
+      next = halfSpace < 0 ? -1 : trie.next(halfSpace, c);
+      if (next >= 0) {
+        form[length] = ZWNJ;
+        form[length + 1] = c;
+        spell(token, i + 1, next, form, length + 2, found);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: Lexicon <word list> <lexicon file>");
+      System.exit(1);
+    }
+    try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+      read(in).write(Paths.get(args[1]));
+    }
+  }
+}
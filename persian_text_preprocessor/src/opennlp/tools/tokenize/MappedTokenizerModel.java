@@ -0,0 +1,107 @@
+package opennlp.tools.tokenize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.MappedModel;
+import opennlp.tools.ml.model.MaxentModel;
+import opennlp.tools.util.InvalidFormatException;
+
+/**
+ * A tokenizer model stored in the {@link MappedModel} format. The model is
+ * memory-mapped and evaluated in place, so it is ready to use as soon as the
+ * file is opened, and processes on the same host share one copy of it.
+ * <p>
+ * Files are created from a {@link TokenizerModel} with
+ * {@link #convert(TokenizerModel, Path)}, or from the command line with
+ * <code>MappedTokenizerModel &lt;tokenizer model&gt; &lt;mapped model&gt;</code>.
+ * The tokenizer settings of the model are kept in the manifest of the file.
+ */
+public class MappedTokenizerModel {
+
+  private static final String LANGUAGE = "language";
+  private static final String USE_ALPHA_NUMERIC_OPTIMIZATION = "useAlphaNumericOptimization";
+  private static final String ALPHA_NUMERIC_PATTERN = "alphaNumericPattern";
+  private static final String ABBREVIATIONS = "abbreviations";
+
+  private final MappedModel model;
+  private final TokenizerFactory factory;
+
+  /**
+   * Maps the model file read-only into memory.
+   */
+  public MappedTokenizerModel(Path path) throws IOException {
+    model = MappedModel.open(path);
+    Properties manifest = model.getManifest();
+
+    String useAlphaNumericOptimization = manifest.getProperty(USE_ALPHA_NUMERIC_OPTIMIZATION);
+    if (useAlphaNumericOptimization == null) {
+      throw new InvalidFormatException(USE_ALPHA_NUMERIC_OPTIMIZATION
+          + " is a mandatory property!");
+    }
+    String alphaNumericPattern = manifest.getProperty(ALPHA_NUMERIC_PATTERN);
+    String abbreviations = manifest.getProperty(ABBREVIATIONS);
+
+    factory = new TokenizerFactory(manifest.getProperty(LANGUAGE),
+        abbreviations == null ? null : new Dictionary(
+            new ByteArrayInputStream(abbreviations.getBytes(StandardCharsets.UTF_8))),
+        Boolean.valueOf(useAlphaNumericOptimization),
+        alphaNumericPattern == null ? null : Pattern.compile(alphaNumericPattern));
+  }
+
+  public MaxentModel getMaxentModel() {
+    return model;
+  }
+
+  public TokenizerFactory getFactory() {
+    return factory;
+  }
+
+  /**
+   * Writes the tokenizer model in the mapped format.
+   *
+   * @throws IllegalArgumentException if the model is not a {@link GISModel}
+   */
+  public static void convert(TokenizerModel tokenizerModel, Path path) throws IOException {
+    if (!(tokenizerModel.getMaxentModel() instanceof GISModel)) {
+      throw new IllegalArgumentException("Only maxent tokenizer models can be mapped");
+    }
+
+    TokenizerFactory factory = tokenizerModel.getFactory();
+    Properties manifest = new Properties();
+    if (factory.getLanguageCode() != null) {
+      manifest.setProperty(LANGUAGE, factory.getLanguageCode());
+    }
+    manifest.setProperty(USE_ALPHA_NUMERIC_OPTIMIZATION,
+        Boolean.toString(factory.isUseAlphaNumericOptmization()));
+    manifest.setProperty(ALPHA_NUMERIC_PATTERN, factory.getAlphaNumericPattern().pattern());
+    Dictionary abbreviations = factory.getAbbreviationDictionary();
+    if (abbreviations != null) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      abbreviations.serialize(out);
+      manifest.setProperty(ABBREVIATIONS, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    MappedModel.write((GISModel) tokenizerModel.getMaxentModel(), manifest, path);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: MappedTokenizerModel <tokenizer model> <mapped model>");
+      System.exit(1);
+    }
+    try (InputStream in = new FileInputStream(args[0])) {
+      convert(new TokenizerModel(in), Paths.get(args[1]));
+    }
+  }
+}
@@ -1,9 +1,11 @@
 package opennlp.tools.tokenize;
 
+import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -17,9 +19,11 @@ import com.sun.org.apache.xpath.internal.operations.Bool;
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.ml.EventTrainer;
 import opennlp.tools.ml.TrainerFactory;
+import opennlp.tools.ml.model.BinaryOutcomeEvaluator;
 import opennlp.tools.ml.model.Event;
 import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.tokenize.lang.Factory;
+import opennlp.tools.util.BoundedCache;
 import opennlp.tools.util.ObjectStream;
 import opennlp.tools.util.Span;
 import opennlp.tools.util.TrainingParameters;
@@ -49,36 +53,115 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	  /**
 	   * The maximum entropy model to use to evaluate contexts.
 	   */
-	  private MaxentModel model;
+	  private final MaxentModel model;
 
 	  /**
 	   * The context generator.
 	   */
 	  private final TokenContextGenerator cg;
 
+	  /**
+	   * Generates the features of <code>cg</code> as predicate ids, or
+	   * <code>null</code> if the model or context generator is not supported.
+	   */
+	  private final HashedTokenContextGenerator hcg;
+
+	  /**
+	   * Scores split decisions of a model with the two outcomes
+	   * {@link #SPLIT} and {@link #NO_SPLIT}, or <code>null</code> if the
+	   * model is not supported.
+	   */
+	  private final BinaryOutcomeEvaluator binary;
+
+	  /**
+	   * Index of {@link #SPLIT} among the outcomes of the model.
+	   */
+	  private final int splitIndex;
+
 	  /**
 	   * Optimization flag to skip alpha numeric tokens for further
 	   * tokenization
 	   */
-	  private boolean useAlphaNumericOptimization;
+	  private final boolean useAlphaNumericOptimization;
 
 	  /**
 	   * List of probabilities for each token returned from a call to
-	   * <code>tokenize</code> or <code>tokenizePos</code>.
+	   * <code>tokenize</code> or <code>tokenizePos</code>. The model and the
+	   * context generator are shared read-only, so this list is the only state
+	   * kept between calls and every thread gets its own.
 	   */
-	  private List<Double> tokProbs;
+	  private final ThreadLocal<ProbabilityList> tokProbs =
+	      ThreadLocal.withInitial(ProbabilityList::new);
 
-	  private List<Span> newTokens;
+	  /**
+	   * Whether the probabilities of the tokens are kept for
+	   * {@link #getTokenProbabilities()}.
+	   */
+	  private volatile boolean recordProbabilities = true;
+
+	  /**
+	   * Default number of tokens whose half space decisions are cached.
+	   */
+	  public static final int DEFAULT_WORD_CACHE_SIZE = 50000;
+
+	  /**
+	   * Default number of adjacent token pairs whose join decisions are cached.
+	   */
+	  public static final int DEFAULT_PAIR_CACHE_SIZE = 100000;
+
+	  /**
+	   * The half space decisions inside a token only depend on the token itself,
+	   * and the join decision between two tokens only on the pair, so both are
+	   * cached. Either cache is <code>null</code> when disabled.
+	   */
+	  private final BoundedCache<String, WordDecision> wordCache;
+	  private final BoundedCache<TokenPair, JoinDecision> pairCache;
+
+	  /**
+	   * Known words, whose half spaces are taken from the lexicon instead of
+	   * the model, or <code>null</code>.
+	   */
+	  private volatile Lexicon lexicon;
 
 	  public PersianHalfSpaceChecker(TokenizerModel model) {
-	    TokenizerFactory factory = model.getFactory();
+	    this(model, DEFAULT_WORD_CACHE_SIZE, DEFAULT_PAIR_CACHE_SIZE);
+	  }
+
+	  /**
+	   * Initializes the {@link PersianHalfSpaceChecker} with caches of the given sizes.
+	   *
+	   * @param wordCacheSize number of tokens to cache, 0 disables the cache
+	   * @param pairCacheSize number of adjacent token pairs to cache, 0 disables the cache
+	   */
+	  public PersianHalfSpaceChecker(TokenizerModel model, int wordCacheSize, int pairCacheSize) {
+	    this(model.getMaxentModel(), model.getFactory(), wordCacheSize, pairCacheSize);
+	  }
+
+	  /**
+	   * Initializes the {@link PersianHalfSpaceChecker} with a memory-mapped model.
+	   */
+	  public PersianHalfSpaceChecker(MappedTokenizerModel model) {
+	    this(model.getMaxentModel(), model.getFactory(), DEFAULT_WORD_CACHE_SIZE, DEFAULT_PAIR_CACHE_SIZE);
+	  }
+
+	  /**
+	   * Initializes the {@link PersianHalfSpaceChecker} with a model, the factory
+	   * of its tokenizer settings and caches of the given sizes.
+	   *
+	   * @param wordCacheSize number of tokens to cache, 0 disables the cache
+	   * @param pairCacheSize number of adjacent token pairs to cache, 0 disables the cache
+	   */
+	  public PersianHalfSpaceChecker(MaxentModel model, TokenizerFactory factory,
+	      int wordCacheSize, int pairCacheSize) {
 	    this.alphanumeric = factory.getAlphaNumericPattern();
 	    this.cg = factory.getContextGenerator();
-	    this.model = model.getMaxentModel();
+	    this.model = model;
+	    this.hcg = HashedTokenContextGenerator.create(this.model, this.cg);
+	    this.binary = BinaryOutcomeEvaluator.create(this.model, SPLIT);
+	    this.splitIndex = this.model.getIndex(SPLIT);
 	    this.useAlphaNumericOptimization = factory.isUseAlphaNumericOptmization();
-
-	    newTokens = new ArrayList<>();
-	    tokProbs = new ArrayList<>(50);
+	    this.wordCache = wordCacheSize > 0 ? new BoundedCache<>(wordCacheSize) : null;
+	    this.pairCache = pairCacheSize > 0 ? new BoundedCache<>(pairCacheSize) : null;
 	  }
 
 	  /**
@@ -93,10 +176,12 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	        getAbbreviations(model.getAbbreviations()));
 
 	    this.model = model.getMaxentModel();
+	    this.hcg = HashedTokenContextGenerator.create(this.model, this.cg);
+	    this.binary = BinaryOutcomeEvaluator.create(this.model, SPLIT);
+	    this.splitIndex = this.model.getIndex(SPLIT);
 	    useAlphaNumericOptimization = model.useAlphaNumericOptimization();
-
-	    newTokens = new ArrayList<>();
-	    tokProbs = new ArrayList<>(50);
+	    this.wordCache = new BoundedCache<>(DEFAULT_WORD_CACHE_SIZE);
+	    this.pairCache = new BoundedCache<>(DEFAULT_PAIR_CACHE_SIZE);
 	  }
 
 	  private static Set<String> getAbbreviations(Dictionary abbreviations) {
@@ -106,19 +191,72 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	    return abbreviations.asStringSet();
 	  }
 
+	  /**
+	   * Evaluates the model at the specified index of the token.
+	   */
+	  private double[] eval(String tok, int index) {
+	    if (hcg != null) {
+	      return hcg.eval(tok, index);
+	    }
+	    return model.eval(cg.getContext(tok, index));
+	  }
+
+	  /**
+	   * Returns the probability that the token is split at the specified index.
+	   */
+	  private double splitProb(String tok, int index) {
+	    if (binary != null) {
+	      return hcg != null ? binary.probability(hcg.getContext(tok, index))
+	          : binary.probability(cg.getContext(tok, index));
+	    }
+	    if (splitIndex < 0) {
+	      return 0;
+	    }
+	    return eval(tok, index)[splitIndex];
+	  }
+
+	  /**
+	   * Tells whether {@link #SPLIT} is the best outcome for the probability
+	   * returned by {@link #splitProb(String, int)}.
+	   */
+	  private boolean isSplit(double p) {
+	    if (binary != null) {
+	      return binary.isPositive(p);
+	    }
+	    // on a tie the model picks the outcome with the lower index
+	    return p > 0.5 || (p == 0.5 && splitIndex == 0);
+	  }
+
 	  /**
 	   * Returns the probabilities associated with the most recent
-	   * calls to {@link PersianHalfSpaceChecker#tokenize(String)} or {@link PersianHalfSpaceChecker#tokenizePos(String)}.
+	   * calls to {@link PersianHalfSpaceChecker#tokenize(String)} or {@link PersianHalfSpaceChecker#tokenizePos(String)}
+	   * or to one of the normalize methods of the calling thread.
 	   *
 	   * @return probability for each token returned for the most recent
 	   *     call to tokenize.  If not applicable an empty array is returned.
 	   */
 	  public double[] getTokenProbabilities() {
-	    double[] tokProbArray = new double[tokProbs.size()];
-	    for (int i = 0; i < tokProbArray.length; i++) {
-	      tokProbArray[i] = tokProbs.get(i);
-	    }
-	    return tokProbArray;
+	    return tokProbs.get().toArray();
+	  }
+
+	  /**
+	   * Turns keeping the probabilities for {@link #getTokenProbabilities()}
+	   * on or off, it is on by default. Callers which never ask for them can
+	   * turn it off to skip the bookkeeping, then an empty array is returned.
+	   */
+	  public void setRecordProbabilities(boolean recordProbabilities) {
+	    this.recordProbabilities = recordProbabilities;
+	  }
+
+	  /**
+	   * Clears the probabilities of the calling thread for a new call.
+	   *
+	   * @return the list to add the probabilities of the call to
+	   */
+	  private ProbabilityList startProbabilities() {
+	    ProbabilityList tokProbs = this.tokProbs.get();
+	    tokProbs.clear();
+	    return recordProbabilities ? tokProbs : ProbabilityList.DISCARD;
 	  }
 
 	  /**
@@ -130,8 +268,8 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	   */
 	  public Span[] tokenizePos(String d) {
 	    Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
-	    newTokens.clear();
-	    tokProbs.clear();
+	    List<Span> newTokens = new ArrayList<>();
+	    ProbabilityList tokProbs = startProbabilities();
 	    for (Span s : tokens) {
 	      String tok = d.substring(s.getStart(), s.getEnd());
 	      // Can't tokenize single characters
@@ -147,11 +285,10 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	        final int origStart = s.getStart();
 	        double tokenProb = 1.0;
 	        for (int j = origStart + 1; j < end; j++) {
-	          double[] probs =
-	              model.eval(cg.getContext(tok, j - origStart));
-	          String best = model.getBestOutcome(probs);
-	          tokenProb *= probs[model.getIndex(best)];
-	          if (best.equals(PersianHalfSpaceChecker.SPLIT)) {
+	          double p = splitProb(tok, j - origStart);
+	          boolean split = isSplit(p);
+	          tokenProb *= split ? p : 1 - p;
+	          if (split) {
 	            newTokens.add(new Span(start, j));
 	            tokProbs.add(tokenProb);
 	            start = j;
@@ -176,11 +313,6 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	   * @return   A string array containing individual tokens as elements.
 	   */
 	  public String[] normalize(String d) {
-		  	String seperatorChars = Character.toString((char)8204);
-		  	List<String> tokList = new ArrayList<>();
-		    String newD = d;
-		    int shift = 0;
-		  	
 		    String[] toks = WhitespaceTokenizer.INSTANCE.tokenize(d);
 		    
 //		    String[] toks;
@@ -199,69 +331,8 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 //			}
 
 			
-		    for(int idx = 0; idx < toks.length; idx++){
-		    	
-				// Can't tokenize single characters
-				if (toks[idx].length() < 2) {  
-					tokProbs.add(1d);
-				    continue;
-				} else if (useAlphaNumericOptimization() && alphanumeric.matcher(toks[idx]).matches()) {
-					tokProbs.add(1d);
-					continue;
-				} else {
-					double tokenProb = 1.0;
-					for(int i = 1; i < toks[idx].length() ; i++){
-						double[] probs = model.eval(cg.getContext(toks[idx], i));
-					    String best = model.getBestOutcome(probs);
-					    tokenProb *= probs[model.getIndex(best)];
-					    if (best.equals(TokenizerME.SPLIT)) {
-					    	toks[idx] = new StringBuilder(toks[idx]).insert(i, seperatorChars).toString();
-					    	i++;
-					    }
-					}
-					tokProbs.add(tokenProb);
-				}
-		    }
-		    
-		    if(toks.length < 2){
-		    	if(toks.length > 0){
-		    		tokList.add(toks[0]);
-		    	}
-		    }else{   	
-		    	
-		        double[] probs = model.eval(cg.getContext(toks[0]+toks[1], toks[0].length()));
-		        String prevBest = model.getBestOutcome(probs);
-		        double prevTokenProb = probs[model.getIndex(prevBest)];
-		        
-		        for(int idx = 1; idx < toks.length - 1; idx++){
-		        	
-		        	probs = model.eval(cg.getContext(toks[idx] + toks[idx + 1], toks[idx].length()));
-			        String best = model.getBestOutcome(probs);
-			        double tokenProb = probs[model.getIndex(best)];
-			        
-			        if (prevBest.equals(PersianHalfSpaceChecker.SPLIT) 
-			        		&& (!best.equals(PersianHalfSpaceChecker.SPLIT) || prevTokenProb > tokenProb)) {
-			        	toks[idx] = toks[idx-1] + seperatorChars + toks[idx];
-			        	
-			        	probs = model.eval(cg.getContext(toks[idx]+toks[idx+1], toks[idx].length()));
-				        prevBest = model.getBestOutcome(probs);
-				        prevTokenProb = probs[model.getIndex(prevBest)];
-				        
-			        }else{
-			        	tokList.add(toks[idx-1]);
-			        	prevBest = best;
-			        	prevTokenProb = tokenProb;
-			        }
-			        
-		        }
-		        
-		        if(prevBest.equals(PersianHalfSpaceChecker.SPLIT)){
-		        	tokList.add(toks[toks.length-2] + seperatorChars+ toks[toks.length-1]);
-		        }else{
-		        	tokList.add(toks[toks.length-2]);
-		        	tokList.add(toks[toks.length-1]);
-		        }
-		    }
+		    List<String> tokList = new ArrayList<>();
+		    normalize(toks, (text, start, end) -> tokList.add(text.toString()));
 		    String[] toks1 = new String[tokList.size()];
 		    tokList.toArray(toks1);
 		    return toks1;
@@ -269,81 +340,120 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 		  }
 
 		  
+	  /**
+	   * Inserts half spaces like {@link #normalize(String)}, but copies the
+	   * tokens into a buffer. The probability of a token, unless the buffer
+	   * does not record them, is the one of the half space decisions inside
+	   * its words and of the half spaces which joined them.
+	   *
+	   * @param d  The string to be tokenized.
+	   * @param out  Receives the tokens.
+	   */
+	  public void normalize(String d, TokenBuffer out) {
+		    normalize(WhitespaceTokenizer.INSTANCE.tokenize(d), out);
+	  }
+
+		  
 	  
 	  
 	  public String normalize(String[] toks) {
-		  	String seperatorChars = Character.toString((char)8204);
 		  	List<String> tokList = new ArrayList<>();
+		  	normalize(toks, (text, start, end) -> tokList.add(text.toString()));
+		    return String.join(" ", tokList);
+			    
+		  }
+
+	  /**
+	   * Writes every token in the normalized form of {@link #checkWord(String)}
+	   * and joins adjacent tokens with a half space where the model decides so.
+	   *
+	   * @param toks  The tokens, which are replaced by their normalized forms.
+	   * @param out  Receives the resulting tokens in order.
+	   *     The probability of every token is kept for
+	   *     {@link #getTokenProbabilities()} and handed to the sink if it
+	   *     records probabilities.
+	   */
+	  private void normalize(String[] toks, TokenSink out) {
+		  	String seperatorChars = Character.toString((char)8204);
+		  	ProbabilityList tokProbs = startProbabilities();
+		  	boolean record = out.recordsProbabilities();
+		  	// the probability of every token so far, if anyone wants them
+		  	double[] probs = record || tokProbs != ProbabilityList.DISCARD ? new double[toks.length] : null;
 		  	
 		    for(int idx = 0; idx < toks.length; idx++){
 		    	
 				// Can't tokenize single characters
 				if (toks[idx].length() < 2) {  
-					tokProbs.add(1d);
+					setProb(probs, idx, 1d);
 				    continue;
 				} else if (useAlphaNumericOptimization() && alphanumeric.matcher(toks[idx]).matches()) {
-					tokProbs.add(1d);
+					setProb(probs, idx, 1d);
 					continue;
 				} else {
-					double tokenProb = 1.0;
-					for(int i = 1; i < toks[idx].length() ; i++){
-						double[] probs = model.eval(cg.getContext(toks[idx], i));
-					    String best = model.getBestOutcome(probs);
-					    tokenProb *= probs[model.getIndex(best)];
-					    if (best.equals(TokenizerME.SPLIT)) {
-					    	toks[idx] = new StringBuilder(toks[idx]).insert(i, seperatorChars).toString();
-					    	i++;
-					    }
-					}
-					tokProbs.add(tokenProb);
+					WordDecision word = checkWord(toks[idx]);
+					toks[idx] = word.text;
+					setProb(probs, idx, word.prob);
 				}
 		    }
 		    
 		    if(toks.length < 2){
 		    	if(toks.length > 0){
-		    		tokList.add(toks[0]);
+		    		emit(out, tokProbs, record, toks[0], probs, 0);
 		    	}
 		    }else{   	
 		    	
-		        double[] probs = model.eval(cg.getContext(toks[0]+toks[1], toks[0].length()));
-		        String prevBest = model.getBestOutcome(probs);
-		        double prevTokenProb = probs[model.getIndex(prevBest)];
+		        JoinDecision prev = checkJoin(toks[0], toks[1]);
 		        
 		        for(int idx = 1; idx < toks.length - 1; idx++){
 		        	
-		        	probs = model.eval(cg.getContext(toks[idx] + toks[idx + 1], toks[idx].length()));
-			        String best = model.getBestOutcome(probs);
-			        double tokenProb = probs[model.getIndex(best)];
+		        	JoinDecision next = checkJoin(toks[idx], toks[idx + 1]);
 			        
-			        if (prevBest.equals(PersianHalfSpaceChecker.SPLIT) 
-			        		&& (!best.equals(PersianHalfSpaceChecker.SPLIT) || prevTokenProb > tokenProb)) {
+			        if (prev.split && (!next.split || prev.prob > next.prob)) {
 			        	toks[idx] = toks[idx-1] + seperatorChars + toks[idx];
+			        	if (probs != null) {
+			        		probs[idx] *= probs[idx-1] * prev.prob;
+			        	}
 			        	
-			        	probs = model.eval(cg.getContext(toks[idx]+toks[idx+1], toks[idx].length()));
-				        prevBest = model.getBestOutcome(probs);
-				        prevTokenProb = probs[model.getIndex(prevBest)];
+			        	prev = checkJoin(toks[idx], toks[idx + 1]);
 				        
 			        }else{
-			        	tokList.add(toks[idx-1]);
-			        	prevBest = best;
-			        	prevTokenProb = tokenProb;
+			        	emit(out, tokProbs, record, toks[idx-1], probs, idx-1);
+			        	prev = next;
 			        }
 			        
 		        }
 		        
-		        if(prevBest.equals(PersianHalfSpaceChecker.SPLIT)){
-		        	tokList.add(toks[toks.length-2] + seperatorChars+ toks[toks.length-1]);
+		        int last = toks.length-1;
+		        if(prev.split){
+		        	if (probs != null) {
+		        		probs[last] *= probs[last-1] * prev.prob;
+		        	}
+		        	emit(out, tokProbs, record, toks[last-1] + seperatorChars+ toks[last], probs, last);
 		        }else{
-		        	tokList.add(toks[toks.length-2]);
-		        	tokList.add(toks[toks.length-1]);
+		        	emit(out, tokProbs, record, toks[last-1], probs, last-1);
+		        	emit(out, tokProbs, record, toks[last], probs, last);
 		        }
 		    }
-//		    String[] toks1 = new String[tokList.size()];
-//		    tokList.toArray(toks1);
-		    return String.join(" ", tokList);
-			    
 		  }
 
+	  private static void setProb(double[] probs, int idx, double prob) {
+		  if (probs != null) {
+			  probs[idx] = prob;
+		  }
+	  }
+
+	  private static void emit(TokenSink out, ProbabilityList tokProbs, boolean record,
+			  String token, double[] probs, int idx) {
+		  if (probs != null) {
+			  tokProbs.add(probs[idx]);
+		  }
+		  if (record) {
+			  out.token(token, 0, token.length(), probs[idx]);
+		  } else {
+			  out.token(token, 0, token.length());
+		  }
+	  }
+
 		  
 	  
 
@@ -351,6 +461,277 @@ public class PersianHalfSpaceChecker extends AbstractTokenizer{
 	  
 	  
 	  
+	  /**
+	   * Inserts half spaces into one token as {@link #normalize(String[])}
+	   * does, which leaves single characters and, with the alpha-numeric
+	   * optimization, alpha-numeric tokens alone.
+	   */
+	  String normalizeWord(String tok) {
+		  if (tok.length() < 2
+				  || (useAlphaNumericOptimization() && alphanumeric.matcher(tok).matches())) {
+			  return tok;
+		  }
+		  return checkWord(tok).text;
+	  }
+
+	  /**
+	   * Like {@link #normalizeWord(String)}, but with the probability of the
+	   * decisions about the token.
+	   */
+	  WordDecision checkToken(String tok) {
+		  if (tok.length() < 2
+				  || (useAlphaNumericOptimization() && alphanumeric.matcher(tok).matches())) {
+			  return new WordDecision(tok, 1.0);
+		  }
+		  return checkWord(tok);
+	  }
+
+	  /**
+	   * Inserts a half space into the token wherever the model predicts one.
+	   */
+	  private WordDecision checkWord(String tok) {
+		  Lexicon lexicon = this.lexicon;
+		  if (lexicon != null) {
+			  String word = lexicon.spell(tok);
+			  if (word != null) {
+				  return new WordDecision(word, 1.0);
+			  }
+		  }
+		  if (wordCache == null) {
+			  return evalWord(tok);
+		  }
+		  return wordCache.computeIfAbsent(tok, this::evalWord);
+	  }
+
+	  private WordDecision evalWord(String tok) {
+		  String seperatorChars = Character.toString((char)8204);
+		  String text = tok;
+		  double tokenProb = 1.0;
+		  for(int i = 1; i < text.length() ; i++){
+			  double p = splitProb(text, i);
+			  boolean split = isSplit(p);
+			  tokenProb *= split ? p : 1 - p;
+			  if (split) {
+				  text = new StringBuilder(text).insert(i, seperatorChars).toString();
+				  i++;
+			  }
+		  }
+		  return new WordDecision(text, tokenProb);
+	  }
+
+	  /**
+	   * Decides whether the two adjacent tokens should be joined with a half space.
+	   */
+	  JoinDecision checkJoin(String left, String right) {
+		  Lexicon lexicon = this.lexicon;
+		  if (lexicon != null) {
+			  if (lexicon.containsHalfSpaced(left, right)) {
+				  return KNOWN_HALF_SPACE;
+			  }
+			  if (lexicon.containsJoined(left, right)) {
+				  return KNOWN_NO_HALF_SPACE;
+			  }
+		  }
+		  if (pairCache == null) {
+			  return evalJoin(left, right);
+		  }
+		  return pairCache.computeIfAbsent(new TokenPair(left, right),
+				  pair -> evalJoin(pair.left, pair.right));
+	  }
+
+	  private JoinDecision evalJoin(String left, String right) {
+		  double p;
+		  if (binary != null && hcg != null) {
+			  p = binary.probability(hcg.getContext(left, right));
+		  } else {
+			  p = splitProb(left + right, left.length());
+		  }
+		  boolean split = isSplit(p);
+		  return new JoinDecision(split, split ? p : 1 - p);
+	  }
+
+	  /**
+	   * Fills the token cache ahead of time, so the most frequent words are
+	   * answered from the cache from the first document on. Words are added in
+	   * the given order until the cache is full, so a frequency list should be
+	   * sorted with the most frequent word first.
+	   *
+	   * @param words the words to check
+	   * @return the number of words added to the cache
+	   */
+	  public int prewarm(Iterable<String> words) {
+		  if (wordCache == null) {
+			  return 0;
+		  }
+		  int count = 0;
+		  for (String word : words) {
+			  if (count >= wordCache.capacity()) {
+				  break;
+			  }
+			  if (word.length() < 2
+					  || (useAlphaNumericOptimization() && alphanumeric.matcher(word).matches())) {
+				  continue;
+			  }
+			  wordCache.put(word, evalWord(word));
+			  count++;
+		  }
+		  return count;
+	  }
+
+	  /**
+	   * Fills the token cache from a frequency list with one word per line,
+	   * optionally followed by whitespace and its count. Empty lines are ignored.
+	   *
+	   * @see #prewarm(Iterable)
+	   */
+	  public int prewarm(Reader frequencyList) throws IOException {
+		  BufferedReader reader = new BufferedReader(frequencyList);
+		  List<String> words = new ArrayList<>();
+		  int capacity = wordCache == null ? 0 : wordCache.capacity();
+		  String line;
+		  while (words.size() < capacity && (line = reader.readLine()) != null) {
+			  line = line.trim();
+			  if (!line.isEmpty()) {
+				  words.add(WHITESPACE.split(line, 2)[0]);
+			  }
+		  }
+		  return prewarm(words);
+	  }
+
+	  /**
+	   * @return the number of lookups which found a token in the token cache, 0 when it is disabled
+	   */
+	  public long getWordCacheHits() {
+		  return wordCache == null ? 0 : wordCache.hits();
+	  }
+
+	  /**
+	   * @return the number of lookups which missed the token cache, 0 when it is disabled
+	   */
+	  public long getWordCacheMisses() {
+		  return wordCache == null ? 0 : wordCache.misses();
+	  }
+
+	  /**
+	   * @return the number of tokens in the token cache, 0 when it is disabled
+	   */
+	  public int getWordCacheSize() {
+		  return wordCache == null ? 0 : wordCache.size();
+	  }
+
+	  /**
+	   * @return the number of lookups which found a pair in the token pair cache, 0 when it is disabled
+	   */
+	  public long getPairCacheHits() {
+		  return pairCache == null ? 0 : pairCache.hits();
+	  }
+
+	  /**
+	   * @return the number of lookups which missed the token pair cache, 0 when it is disabled
+	   */
+	  public long getPairCacheMisses() {
+		  return pairCache == null ? 0 : pairCache.misses();
+	  }
+
+	  /**
+	   * @return the number of pairs in the token pair cache, 0 when it is disabled
+	   */
+	  public int getPairCacheSize() {
+		  return pairCache == null ? 0 : pairCache.size();
+	  }
+
+	  /**
+	   * @return a summary of the size and the hits and misses of the token cache,
+	   *     for logging; see {@link #getWordCacheHits()} for the numbers
+	   */
+	  public String getWordCacheStats() {
+		  return wordCache == null ? "disabled" : wordCache.toString();
+	  }
+
+	  /**
+	   * @return a summary of the size and the hits and misses of the token pair cache,
+	   *     for logging; see {@link #getPairCacheHits()} for the numbers
+	   */
+	  public String getPairCacheStats() {
+		  return pairCache == null ? "disabled" : pairCache.toString();
+	  }
+
+	  /**
+	   * Empties both caches.
+	   */
+	  public void clearCaches() {
+		  if (wordCache != null) {
+			  wordCache.clear();
+		  }
+		  if (pairCache != null) {
+			  pairCache.clear();
+		  }
+	  }
+
+	  /**
+	   * Sets the lexicon of known words. A token which the lexicon knows with
+	   * or without half spaces is written as in the lexicon, and two tokens
+	   * which together are a known word get or do not get a half space between
+	   * them as in the lexicon, without asking the model.
+	   *
+	   * @param lexicon the lexicon, or <code>null</code> to always use the model
+	   */
+	  public void setLexicon(Lexicon lexicon) {
+		  this.lexicon = lexicon;
+	  }
+
+	  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	  static final class WordDecision {
+		  final String text;
+		  final double prob;
+
+		  WordDecision(String text, double prob) {
+			  this.text = text;
+			  this.prob = prob;
+		  }
+	  }
+
+	  private static final JoinDecision KNOWN_HALF_SPACE = new JoinDecision(true, 1.0);
+	  private static final JoinDecision KNOWN_NO_HALF_SPACE = new JoinDecision(false, 1.0);
+
+	  static final class JoinDecision {
+		  final boolean split;
+		  final double prob;
+
+		  JoinDecision(boolean split, double prob) {
+			  this.split = split;
+			  this.prob = prob;
+		  }
+	  }
+
+	  private static final class TokenPair {
+		  final String left;
+		  final String right;
+
+		  TokenPair(String left, String right) {
+			  this.left = left;
+			  this.right = right;
+		  }
+
+		  @Override
+		  public int hashCode() {
+			  return 31 * left.hashCode() + right.hashCode();
+		  }
+
+		  @Override
+		  public boolean equals(Object obj) {
+			  if (this == obj) {
+				  return true;
+			  }
+			  if (!(obj instanceof TokenPair)) {
+				  return false;
+			  }
+			  TokenPair other = (TokenPair) obj;
+			  return left.equals(other.left) && right.equals(other.right);
+		  }
+	  }
+
 	  /**
 	   * Trains a model for the {@link PersianHalfSpaceChecker}.
 	   *
@@ -0,0 +1,96 @@
+package opennlp.tools.tokenize;
+
+import java.util.Arrays;
+
+/**
+ * A list of primitive doubles which holds the token probabilities of the
+ * most recent call of a tokenizer. It is cleared at the start of every call
+ * and gives back the memory of an unusually long text when it is cleared, so
+ * it stays small however long a thread runs.
+ */
+final class ProbabilityList {
+
+  /**
+   * A list which ignores everything added to it, for calls which skip the
+   * bookkeeping. It is always empty.
+   */
+  static final ProbabilityList DISCARD = new ProbabilityList(true);
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** A larger array is dropped by {@link #clear()}. */
+  private static final int MAX_RETAINED_CAPACITY = 1 << 14;
+
+  private final boolean discard;
+  private double[] values;
+  private int size;
+
+  ProbabilityList() {
+    this(false);
+  }
+
+  private ProbabilityList(boolean discard) {
+    this.discard = discard;
+    values = new double[discard ? 0 : INITIAL_CAPACITY];
+  }
+
+  void clear() {
+    size = 0;
+    if (values.length > MAX_RETAINED_CAPACITY) {
+      values = new double[INITIAL_CAPACITY];
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  void add(double value) {
+    if (discard) {
+      return;
+    }
+    if (size == values.length) {
+      values = Arrays.copyOf(values, size * 2);
+    }
+    values[size++] = value;
+  }
+
+  double get(int i) {
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+    }
+    return values[i];
+  }
+
+  /**
+   * @return the last value, or 1 if the list is empty
+   */
+  double last() {
+    return size == 0 ? 1 : values[size - 1];
+  }
+
+  void set(int i, double value) {
+    if (discard) {
+      return;
+    }
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+    }
+    values[i] = value;
+  }
+
+  void remove(int i) {
+    if (discard) {
+      return;
+    }
+    if (i >= size) {
+      throw new IndexOutOfBoundsException("Index " + i + " of " + size);
+    }
+    System.arraycopy(values, i + 1, values, i, size - i - 1);
+    size--;
+  }
+
+  double[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+}
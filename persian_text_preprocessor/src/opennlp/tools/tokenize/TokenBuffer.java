@@ -0,0 +1,296 @@
+package opennlp.tools.tokenize;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A reusable list of tokens: the characters of all tokens are kept in one
+ * array, the boundaries of the tokens in two int arrays and, if they are
+ * set, an id and a probability of every token in two more.
+ * <p>
+ * Once a buffer has grown to the size of the largest text it is filled with
+ * no allocation at all, and a token can be hashed, compared or copied where
+ * it is, so a String is only built for the tokens a caller asks for with
+ * {@link #getString(int)} or {@link #toArray()}.
+ * <p>
+ * Instances are not thread-safe. A buffer is usually kept by one thread and
+ * {@link #clear() cleared} before every text.
+ */
+public class TokenBuffer implements TokenSink {
+
+  /**
+   * The id of a token whose id was not set.
+   */
+  public static final int NO_ID = -1;
+
+  private char[] chars;
+  private int length;
+
+  private int[] starts;
+  private int[] ends;
+  private int size;
+
+  /** The ids of the tokens, <code>null</code> until one is set. */
+  private int[] ids;
+  /** The probabilities of the tokens, <code>null</code> until one is set. */
+  private double[] probs;
+
+  private boolean recordProbabilities = true;
+
+  public TokenBuffer() {
+    this(64, 512);
+  }
+
+  /**
+   * @param tokenCapacity the initial number of tokens
+   * @param charCapacity the initial number of characters of all tokens
+   */
+  public TokenBuffer(int tokenCapacity, int charCapacity) {
+    chars = new char[Math.max(charCapacity, 1)];
+    starts = new int[Math.max(tokenCapacity, 1)];
+    ends = new int[starts.length];
+  }
+
+  /**
+   * Removes all tokens but keeps the arrays.
+   */
+  public void clear() {
+    size = 0;
+    length = 0;
+  }
+
+  /**
+   * @return the number of tokens
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Appends a token, like {@link #add(CharSequence, int, int)}.
+   */
+  @Override
+  public void token(CharSequence text, int start, int end) {
+    add(text, start, end);
+  }
+
+  /**
+   * Appends a token with its probability.
+   */
+  @Override
+  public void token(CharSequence text, int start, int end, double prob) {
+    int i = add(text, start, end);
+    if (recordProbabilities) {
+      setProbability(i, prob);
+    }
+  }
+
+  /**
+   * Tells whether the producers of tokens are asked for their
+   * probabilities, which is the default.
+   */
+  @Override
+  public boolean recordsProbabilities() {
+    return recordProbabilities;
+  }
+
+  /**
+   * Turns asking the producers of tokens for their probabilities on or off.
+   * Without them the producers skip all probability bookkeeping.
+   */
+  public void setRecordProbabilities(boolean recordProbabilities) {
+    this.recordProbabilities = recordProbabilities;
+  }
+
+  /**
+   * Appends a token.
+   *
+   * @return the index of the token
+   */
+  public int add(CharSequence token) {
+    return add(token, 0, token.length());
+  }
+
+  /**
+   * Appends the characters <code>text[start, end)</code> as a token.
+   *
+   * @return the index of the token
+   */
+  public int add(CharSequence text, int start, int end) {
+    int n = end - start;
+    if (length + n > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(length + n, chars.length * 2));
+    }
+    if (text instanceof String) {
+      ((String) text).getChars(start, end, chars, length);
+    }
+    else {
+      for (int i = start; i < end; i++) {
+        chars[length + i - start] = text.charAt(i);
+      }
+    }
+
+    if (size == starts.length) {
+      int capacity = size * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      if (ids != null) {
+        ids = Arrays.copyOf(ids, capacity);
+      }
+      if (probs != null) {
+        probs = Arrays.copyOf(probs, capacity);
+      }
+    }
+    starts[size] = length;
+    ends[size] = length + n;
+    if (ids != null) {
+      ids[size] = NO_ID;
+    }
+    if (probs != null) {
+      probs[size] = Double.NaN;
+    }
+    length += n;
+    return size++;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Token " + i + " of " + size);
+    }
+  }
+
+  /**
+   * @return the array holding the characters of all tokens, which is
+   *     replaced when the buffer grows
+   */
+  public char[] chars() {
+    return chars;
+  }
+
+  /**
+   * @return the index of the first character of the token in {@link #chars()}
+   */
+  public int start(int i) {
+    checkIndex(i);
+    return starts[i];
+  }
+
+  /**
+   * @return the index after the last character of the token in {@link #chars()}
+   */
+  public int end(int i) {
+    checkIndex(i);
+    return ends[i];
+  }
+
+  /**
+   * @return the number of characters of the token
+   */
+  public int length(int i) {
+    checkIndex(i);
+    return ends[i] - starts[i];
+  }
+
+  /**
+   * @return a read-only view of the characters of the token, which is valid
+   *     until the buffer is changed
+   */
+  public CharSequence get(int i) {
+    checkIndex(i);
+    return CharBuffer.wrap(chars, starts[i], ends[i] - starts[i]).asReadOnlyBuffer();
+  }
+
+  /**
+   * @return the token as a new String
+   */
+  public String getString(int i) {
+    checkIndex(i);
+    return new String(chars, starts[i], ends[i] - starts[i]);
+  }
+
+  /**
+   * @return the hash code of the token, the same as the one of
+   *     {@link #getString(int)}
+   */
+  public int hashCode(int i) {
+    checkIndex(i);
+    int h = 0;
+    for (int k = starts[i]; k < ends[i]; k++) {
+      h = 31 * h + chars[k];
+    }
+    return h;
+  }
+
+  /**
+   * Tells whether the token consists of the characters of <code>s</code>.
+   */
+  public boolean contentEquals(int i, CharSequence s) {
+    checkIndex(i);
+    int n = ends[i] - starts[i];
+    if (s.length() != n) {
+      return false;
+    }
+    for (int k = 0; k < n; k++) {
+      if (chars[starts[i] + k] != s.charAt(k)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the id set for the token, or {@link #NO_ID}
+   */
+  public int getId(int i) {
+    checkIndex(i);
+    return ids == null ? NO_ID : ids[i];
+  }
+
+  /**
+   * Sets the id of the token, for example its index in a vocabulary.
+   */
+  public void setId(int i, int id) {
+    checkIndex(i);
+    if (ids == null) {
+      ids = new int[starts.length];
+      Arrays.fill(ids, NO_ID);
+    }
+    ids[i] = id;
+  }
+
+  /**
+   * @return the probability set for the token, or <code>NaN</code>
+   */
+  public double getProbability(int i) {
+    checkIndex(i);
+    return probs == null ? Double.NaN : probs[i];
+  }
+
+  /**
+   * Sets the probability of the token.
+   */
+  public void setProbability(int i, double prob) {
+    checkIndex(i);
+    if (probs == null) {
+      probs = new double[starts.length];
+      Arrays.fill(probs, Double.NaN);
+    }
+    probs[i] = prob;
+  }
+
+  /**
+   * @return the tokens as new Strings
+   */
+  public String[] toArray() {
+    String[] tokens = new String[size];
+    for (int i = 0; i < size; i++) {
+      tokens[i] = new String(chars, starts[i], ends[i] - starts[i]);
+    }
+    return tokens;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,33 @@
+package opennlp.tools.tokenize;
+
+/**
+ * Receives tokens one at a time as ranges of characters, so a caller can
+ * copy, hash or compare them in place instead of collecting a
+ * <code>String[]</code>.
+ */
+public interface TokenSink {
+
+  /**
+   * Takes the next token, the characters <code>text[start, end)</code>.
+   * The text is only valid during the call and must be copied to be kept.
+   */
+  void token(CharSequence text, int start, int end);
+
+  /**
+   * Takes the next token with its confidence, the probability of the model
+   * decisions which formed it. Called instead of
+   * {@link #token(CharSequence, int, int)} if
+   * {@link #recordsProbabilities()} is <code>true</code>.
+   */
+  default void token(CharSequence text, int start, int end, double prob) {
+    token(text, start, end);
+  }
+
+  /**
+   * Tells whether the sink wants the confidences of the tokens. If not, the
+   * producer skips computing them.
+   */
+  default boolean recordsProbabilities() {
+    return false;
+  }
+}
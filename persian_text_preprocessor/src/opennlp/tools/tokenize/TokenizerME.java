@@ -8,6 +8,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 import org.w3c.dom.views.AbstractView;
@@ -18,6 +19,7 @@ import com.sun.xml.internal.bind.v2.runtime.unmarshaller.XsiNilLoader.Array;
 import opennlp.tools.dictionary.Dictionary;
 import opennlp.tools.ml.EventTrainer;
 import opennlp.tools.ml.TrainerFactory;
+import opennlp.tools.ml.model.BinaryOutcomeEvaluator;
 import opennlp.tools.ml.model.Event;
 import opennlp.tools.ml.model.MaxentModel;
 import opennlp.tools.tokenize.lang.Factory;
@@ -45,41 +47,107 @@ public class TokenizerME extends AbstractTokenizer{
 	  @Deprecated
 	  public static final Pattern alphaNumeric = Pattern.compile(Factory.DEFAULT_ALPHANUMERIC);
 
+	  /**
+	   * The maximum number of tokens {@link #joinBest(String)} joins into one.
+	   */
+	  public static final int DEFAULT_MAX_JOIN_GROUP = 8;
+
 	  private final Pattern alphanumeric;
 
 	  /**
 	   * The maximum entropy model to use to evaluate contexts.
 	   */
-	  private MaxentModel model;
+	  private final MaxentModel model;
 
 	  /**
 	   * The context generator.
 	   */
 	  private final TokenContextGenerator cg;
 
+	  /**
+	   * Generates the features of <code>cg</code> as predicate ids, or
+	   * <code>null</code> if the model or context generator is not supported.
+	   */
+	  private final HashedTokenContextGenerator hcg;
+
+	  /**
+	   * Scores split decisions of a model with the two outcomes
+	   * {@link #SPLIT} and {@link #NO_SPLIT}, or <code>null</code> if the
+	   * model is not supported.
+	   */
+	  private final BinaryOutcomeEvaluator binary;
+
+	  /**
+	   * Index of {@link #SPLIT} among the outcomes of the model.
+	   */
+	  private final int splitIndex;
+
 	  /**
 	   * Optimization flag to skip alpha numeric tokens for further
 	   * tokenization
 	   */
-	  private boolean useAlphaNumericOptimization;
+	  private final boolean useAlphaNumericOptimization;
 
 	  /**
 	   * List of probabilities for each token returned from a call to
-	   * <code>tokenize</code> or <code>tokenizePos</code>.
+	   * <code>tokenize</code> or <code>tokenizePos</code>. The model and the
+	   * context generator are shared read-only, so this list is the only state
+	   * kept between calls and every thread gets its own.
+	   */
+	  private final ThreadLocal<ProbabilityList> tokProbs =
+	      ThreadLocal.withInitial(ProbabilityList::new);
+
+	  /**
+	   * Whether the probabilities of the tokens are kept for
+	   * {@link #getTokenProbabilities()}.
 	   */
-	  private List<Double> tokProbs;
+	  private volatile boolean recordProbabilities = true;
 
-	  private List<Span> newTokens;
+	  /**
+	   * Known words, which are neither split nor scored by the model, or
+	   * <code>null</code>.
+	   */
+	  private volatile Lexicon lexicon;
+
+	  /**
+	   * Scores the boundaries for the {@link JoinDecoder}.
+	   */
+	  private final JoinDecoder.Scorer joinScorer = new JoinDecoder.Scorer() {
+	    @Override
+	    public double splitProb(String text, int start, int end, int index) {
+	      return TokenizerME.this.splitProb(text, start, end, index);
+	    }
+
+	    @Override
+	    public boolean isSplit(double p) {
+	      return TokenizerME.this.isSplit(p);
+	    }
+	  };
 
 	  public TokenizerME(TokenizerModel model) {
-	    TokenizerFactory factory = model.getFactory();
+	    this(model.getMaxentModel(), model.getFactory());
+	  }
+
+	  /**
+	   * Initializes the {@link TokenizerME} with a memory-mapped model.
+	   */
+	  public TokenizerME(MappedTokenizerModel model) {
+	    this(model.getMaxentModel(), model.getFactory());
+	  }
+
+	  /**
+	   * Initializes the {@link TokenizerME} with a model and the factory of its
+	   * tokenizer settings.
+	   */
+	  public TokenizerME(MaxentModel model, TokenizerFactory factory) {
 	    this.alphanumeric = factory.getAlphaNumericPattern();
 	    this.cg = factory.getContextGenerator();
-	    this.model = model.getMaxentModel();
+	    this.model = model;
+	    this.hcg = HashedTokenContextGenerator.create(this.model, this.cg);
+	    this.binary = BinaryOutcomeEvaluator.create(this.model, SPLIT);
+	    this.splitIndex = this.model.getIndex(SPLIT);
 	    this.useAlphaNumericOptimization = factory.isUseAlphaNumericOptmization();
 
-	    newTokens = new ArrayList<>();
-	    tokProbs = new ArrayList<>(50);
 	  }
 
 	  /**
@@ -94,10 +162,10 @@ public class TokenizerME extends AbstractTokenizer{
 	        getAbbreviations(model.getAbbreviations()));
 
 	    this.model = model.getMaxentModel();
+	    this.hcg = HashedTokenContextGenerator.create(this.model, this.cg);
+	    this.binary = BinaryOutcomeEvaluator.create(this.model, SPLIT);
+	    this.splitIndex = this.model.getIndex(SPLIT);
 	    useAlphaNumericOptimization = model.useAlphaNumericOptimization();
-
-	    newTokens = new ArrayList<>();
-	    tokProbs = new ArrayList<>(50);
 	  }
 
 	  private static Set<String> getAbbreviations(Dictionary abbreviations) {
@@ -107,6 +175,84 @@ public class TokenizerME extends AbstractTokenizer{
 	    return abbreviations.asStringSet();
 	  }
 
+	  /**
+	   * Evaluates the model at the specified index of the token.
+	   */
+	  private double[] eval(String tok, int index) {
+	    if (hcg != null) {
+	      return hcg.eval(tok, index);
+	    }
+	    return model.eval(cg.getContext(tok, index));
+	  }
+
+	  /**
+	   * Returns the probability that the token is split at the specified index.
+	   */
+	  private double splitProb(String tok, int index) {
+	    if (binary != null) {
+	      return hcg != null ? binary.probability(hcg.getContext(tok, index))
+	          : binary.probability(cg.getContext(tok, index));
+	    }
+	    if (splitIndex < 0) {
+	      return 0;
+	    }
+	    return eval(tok, index)[splitIndex];
+	  }
+
+	  /**
+	   * Returns the probability that the token <code>text[start, end)</code>
+	   * is split at the position index of the text.
+	   */
+	  private double splitProb(String text, int start, int end, int index) {
+	    Lexicon lexicon = this.lexicon;
+	    if (lexicon != null && lexicon.contains(text, start, end)) {
+	      return 0;
+	    }
+	    if (hcg == null) {
+	      return splitProb(text.substring(start, end), index - start);
+	    }
+	    if (binary != null) {
+	      return binary.probability(hcg.getContext(text, start, end, index));
+	    }
+	    if (splitIndex < 0) {
+	      return 0;
+	    }
+	    return hcg.eval(text, start, end, index)[splitIndex];
+	  }
+
+	  /**
+	   * Returns the probability that the two tokens written next to each
+	   * other are split at their boundary.
+	   */
+	  double splitProb(CharSequence left, CharSequence right) {
+	    Lexicon lexicon = this.lexicon;
+	    if (lexicon != null && lexicon.containsJoined(left, right)) {
+	      return 0;
+	    }
+	    if (hcg == null) {
+	      return splitProb(left.toString() + right, left.length());
+	    }
+	    if (binary != null) {
+	      return binary.probability(hcg.getContext(left, right));
+	    }
+	    if (splitIndex < 0) {
+	      return 0;
+	    }
+	    return hcg.eval(left, right)[splitIndex];
+	  }
+
+	  /**
+	   * Tells whether {@link #SPLIT} is the best outcome for the probability
+	   * returned by {@link #splitProb(String, int)}.
+	   */
+	  boolean isSplit(double p) {
+	    if (binary != null) {
+	      return binary.isPositive(p);
+	    }
+	    // on a tie the model picks the outcome with the lower index
+	    return p > 0.5 || (p == 0.5 && splitIndex == 0);
+	  }
+
 	  /**
 	   * Returns the probabilities associated with the most recent
 	   * calls to {@link TokenizerME#tokenize(String)} or {@link TokenizerME#tokenizePos(String)}.
@@ -115,11 +261,27 @@ public class TokenizerME extends AbstractTokenizer{
 	   *     call to tokenize.  If not applicable an empty array is returned.
 	   */
 	  public double[] getTokenProbabilities() {
-	    double[] tokProbArray = new double[tokProbs.size()];
-	    for (int i = 0; i < tokProbArray.length; i++) {
-	      tokProbArray[i] = tokProbs.get(i);
-	    }
-	    return tokProbArray;
+	    return tokProbs.get().toArray();
+	  }
+
+	  /**
+	   * Turns keeping the probabilities for {@link #getTokenProbabilities()}
+	   * on or off, it is on by default. Callers which never ask for them can
+	   * turn it off to skip the bookkeeping, then an empty array is returned.
+	   */
+	  public void setRecordProbabilities(boolean recordProbabilities) {
+	    this.recordProbabilities = recordProbabilities;
+	  }
+
+	  /**
+	   * Clears the probabilities of the calling thread for a new call.
+	   *
+	   * @return the list to add the probabilities of the call to
+	   */
+	  private ProbabilityList startProbabilities() {
+	    ProbabilityList tokProbs = this.tokProbs.get();
+	    tokProbs.clear();
+	    return recordProbabilities ? tokProbs : ProbabilityList.DISCARD;
 	  }
 
 	  /**
@@ -131,8 +293,8 @@ public class TokenizerME extends AbstractTokenizer{
 	   */
 	  public Span[] tokenizePos(String d) {
 	    Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
-	    newTokens.clear();
-	    tokProbs.clear();
+	    List<Span> newTokens = new ArrayList<>();
+	    ProbabilityList tokProbs = startProbabilities();
 	    for (Span s : tokens) {
 	      String tok = d.substring(s.getStart(), s.getEnd());
 	      // Can't tokenize single characters
@@ -148,11 +310,10 @@ public class TokenizerME extends AbstractTokenizer{
 	        final int origStart = s.getStart();
 	        double tokenProb = 1.0;
 	        for (int j = origStart + 1; j < end; j++) {
-	          double[] probs =
-	              model.eval(cg.getContext(tok, j - origStart));
-	          String best = model.getBestOutcome(probs);
-	          tokenProb *= probs[model.getIndex(best)];
-	          if (best.equals(TokenizerME.SPLIT)) {
+	          double p = splitProb(tok, j - origStart);
+	          boolean split = isSplit(p);
+	          tokenProb *= split ? p : 1 - p;
+	          if (split) {
 	            newTokens.add(new Span(start, j));
 	            tokProbs.add(tokenProb);
 	            start = j;
@@ -181,8 +342,8 @@ public class TokenizerME extends AbstractTokenizer{
 		  	List<String> tokList = new ArrayList<>();
 		  
 		    Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
-		    newTokens.clear();
-		    tokProbs.clear();
+		    List<Span> newTokens = new ArrayList<>();
+		    ProbabilityList tokProbs = startProbabilities();
 		    for (Span s : tokens) {
 		      String tok = d.substring(s.getStart(), s.getEnd());
 		      // Can't tokenize single characters
@@ -198,11 +359,10 @@ public class TokenizerME extends AbstractTokenizer{
 		        final int origStart = s.getStart();
 		        double tokenProb = 1.0;
 		        for (int j = origStart + 1; j < end; j++) {
-		          double[] probs =
-		              model.eval(cg.getContext(tok, j - origStart));
-		          String best = model.getBestOutcome(probs);
-		          tokenProb *= probs[model.getIndex(best)];
-		          if (best.equals(TokenizerME.SPLIT)) {
+		          double p = splitProb(tok, j - origStart);
+		          boolean split = isSplit(p);
+		          tokenProb *= split ? p : 1 - p;
+		          if (split) {
 		            newTokens.add(new Span(start, j));
 		            tokProbs.add(tokenProb);
 		            start = j;
@@ -226,9 +386,9 @@ public class TokenizerME extends AbstractTokenizer{
 		    	int midJoin = newTokens.get(0).getEnd() - newTokens.get(0).getStart();
 		    	
 		    	String prevJoinedTok = d.substring(prevStartJoin, prevEndJoin).replaceAll(" ", "");
-		        double[] probs = model.eval(cg.getContext(prevJoinedTok, midJoin));
-		        String prevBest = model.getBestOutcome(probs);
-		        double prevTokenProb = probs[model.getIndex(prevBest)];
+		        double p = splitProb(prevJoinedTok, midJoin);
+		        boolean prevSplit = isSplit(p);
+		        double prevTokenProb = prevSplit ? p : 1 - p;
 		        
 			    for(int idx = 1 ; idx < newTokens.size()-1 ; idx++){
 			    	int startJoin = newTokens.get(idx).getStart();
@@ -236,13 +396,12 @@ public class TokenizerME extends AbstractTokenizer{
 			    	midJoin = d.substring(startJoin, newTokens.get(idx).getEnd()).replaceAll(" ", "").length();//newTokens.get(idx).getEnd() - newTokens.get(idx).getStart(); 
 			    	
 			    	String joinedTok = d.substring(startJoin, endJoin).replaceAll(" ", "");
-			        probs = model.eval(cg.getContext(joinedTok, midJoin));
-			        String best = model.getBestOutcome(probs);
-			        double tokenProb = probs[model.getIndex(best)];
+			        p = splitProb(joinedTok, midJoin);
+			        boolean split = isSplit(p);
+			        double tokenProb = split ? p : 1 - p;
 			        
 			        int prevIdx = idx-1; 
-			        if (prevBest.equals(TokenizerME.NO_SPLIT) 
-		        		&& (!best.equals(TokenizerME.NO_SPLIT) || prevTokenProb > tokenProb)) {
+			        if (!prevSplit && (split || prevTokenProb > tokenProb)) {
 			        	
 			        	newTokens.set(prevIdx, new Span(prevStartJoin, prevEndJoin));
 			        	tokProbs.set(prevIdx, prevTokenProb);
@@ -256,9 +415,9 @@ public class TokenizerME extends AbstractTokenizer{
 				    	midJoin =  d.substring(startJoin, newTokens.get(prevIdx).getEnd()).replaceAll(" ", "").length(); //newTokens.get(prevIdx).getEnd() - newTokens.get(prevIdx).getStart();
 				    	
 				    	joinedTok = d.substring(startJoin, endJoin).replaceAll(" ", "");
-				        probs = model.eval(cg.getContext(joinedTok, midJoin));
-				        best = model.getBestOutcome(probs);
-				        tokenProb = probs[model.getIndex(best)];
+				        p = splitProb(joinedTok, midJoin);
+				        split = isSplit(p);
+				        tokenProb = split ? p : 1 - p;
 				        
 			            idx--;
 			        }
@@ -272,11 +431,11 @@ public class TokenizerME extends AbstractTokenizer{
 			        prevEndJoin = endJoin;
 			        prevJoinedTok = joinedTok;
 			        prevTokenProb = tokenProb;
-			        prevBest = best;
+			        prevSplit = split;
 			    }
 			    
 			    int prevIdx = newTokens.size()-2; 
-			    if (prevBest.equals(TokenizerME.NO_SPLIT)) {
+			    if (!prevSplit) {
 			        	newTokens.set(prevIdx, new Span(prevStartJoin, prevEndJoin));
 			        	tokProbs.set(prevIdx, prevTokenProb);
 			            newTokens.remove(prevIdx+1);
@@ -300,41 +459,9 @@ public class TokenizerME extends AbstractTokenizer{
 		  	List<String> tokList = new ArrayList<>();
 			  
 		    Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
-		    newTokens.clear();
-		    tokProbs.clear();
+		    ProbabilityList tokProbs = startProbabilities();
 		    for (Span s : tokens) {
-		      String tok = d.substring(s.getStart(), s.getEnd());
-		      // Can't tokenize single characters
-		      if (tok.length() < 2) {
-		        newTokens.add(s);
-		        tokProbs.add(1d);
-		        tokList.add(tok);
-		      } else if (useAlphaNumericOptimization() && alphanumeric.matcher(tok).matches()) {
-		        newTokens.add(s);
-		        tokProbs.add(1d);
-		        tokList.add(tok);
-		      } else {
-		        int start = s.getStart();
-		        int end = s.getEnd();
-		        final int origStart = s.getStart();
-		        double tokenProb = 1.0;
-		        for (int j = origStart + 1; j < end; j++) {
-		          double[] probs =
-		              model.eval(cg.getContext(tok, j - origStart));
-		          String best = model.getBestOutcome(probs);
-		          tokenProb *= probs[model.getIndex(best)];
-		          if (best.equals(TokenizerME.SPLIT)) {
-		            newTokens.add(new Span(start, j));
-		            tokProbs.add(tokenProb);
-		            tokList.add(d.substring(start, j));
-		            start = j;
-		            tokenProb = 1.0;
-		          }
-		        }
-		        newTokens.add(new Span(start, end));
-		        tokProbs.add(tokenProb);
-		        tokList.add(d.substring(start, end));
-		      }
+		      splitToken(d.substring(s.getStart(), s.getEnd()), tokProbs, tokList::add);
 		    }
 		    
 		    String[] toks = new String[tokList.size()];
@@ -342,96 +469,142 @@ public class TokenizerME extends AbstractTokenizer{
 		    return toks;
 	  }
 
+	  /**
+	   * Splits the whitespace separated tokens of the string like
+	   * {@link #split(String)}, but appends the parts to a buffer together with
+	   * their probabilities, unless the buffer does not record probabilities.
+	   *
+	   * @param d  The string to split.
+	   * @param out  Receives the parts.
+	   */
+	  public void split(String d, TokenBuffer out){
+		    ProbabilityList tokProbs = this.tokProbs.get();
+		    tokProbs.clear();
+		    Consumer<String> parts = out.recordsProbabilities()
+		        ? part -> out.token(part, 0, part.length(), tokProbs.last())
+		        : out::add;
+		    for (Span s : WhitespaceTokenizer.INSTANCE.tokenizePos(d)) {
+		      splitToken(d.substring(s.getStart(), s.getEnd()),
+		          out.recordsProbabilities() ? tokProbs : null, parts);
+		    }
+	  }
+
+	  /**
+	   * Splits one whitespace free token where the model predicts a split.
+	   *
+	   * @param tok  The token to split.
+	   * @param probs  Receives the probability of every part before the part
+	   *     itself is passed on, may be <code>null</code>.
+	   * @param out  Receives the parts in order.
+	   */
+	  void splitToken(String tok, ProbabilityList probs, Consumer<String> out) {
+	    Lexicon lexicon = this.lexicon;
+	    // Can't tokenize single characters
+	    if (tok.length() < 2
+	        || (useAlphaNumericOptimization() && alphanumeric.matcher(tok).matches())
+	        || (lexicon != null && lexicon.contains(tok))) {
+	      if (probs != null) {
+	        probs.add(1d);
+	      }
+	      out.accept(tok);
+	      return;
+	    }
+	    int start = 0;
+	    double tokenProb = 1.0;
+	    for (int j = 1; j < tok.length(); j++) {
+	      double p = splitProb(tok, j);
+	      boolean split = isSplit(p);
+	      tokenProb *= split ? p : 1 - p;
+	      if (split) {
+	        if (probs != null) {
+	          probs.add(tokenProb);
+	        }
+	        out.accept(tok.substring(start, j));
+	        start = j;
+	        tokenProb = 1.0;
+	      }
+	    }
+	    if (probs != null) {
+	      probs.add(tokenProb);
+	    }
+	    out.accept(tok.substring(start));
+	  }
+
 	  
+	  /**
+	   * Joins adjacent tokens of the whitespace separated string where the
+	   * model decides not to split, greedily from left to right.
+	   *
+	   * @param d  The string whose tokens are joined.
+	   *
+	   * @return The joined tokens.
+	   */
 	  public String[] join(String d){
-	      newTokens.clear();
-	      tokProbs.clear();
-		  List<String> tokList = new ArrayList<>();
-		  Span[] tokens = WhitespaceTokenizer.INSTANCE.tokenizePos(d);
-//		  newTokens = Arrays.asList(tokens);
-		  for(Span token : tokens){
-			  newTokens.add(token);
-		  }
-		  
-		  if(newTokens.size() < 2){
-	    	if(newTokens.size() > 0){
-	    		tokList.add(d.substring(newTokens.get(0).getStart(), newTokens.get(0).getEnd()));
-	    	}
-	      }
-	      else{
-	    	int prevStartJoin = newTokens.get(0).getStart();
-	    	int prevEndJoin = newTokens.get(0+1).getEnd();
-	    	int midJoin = newTokens.get(0).getEnd() - newTokens.get(0).getStart();
-	    	
-	    	String prevJoinedTok = d.substring(prevStartJoin, prevEndJoin).replaceAll(" ", "");
-	        double[] probs = model.eval(cg.getContext(prevJoinedTok, midJoin));
-	        String prevBest = model.getBestOutcome(probs);
-	        double prevTokenProb = probs[model.getIndex(prevBest)];
-	        
-		    for(int idx = 1 ; idx < newTokens.size()-1 ; idx++){
-		    	int startJoin = newTokens.get(idx).getStart();
-		    	int endJoin = newTokens.get(idx+1).getEnd();
-		    	midJoin = d.substring(startJoin, newTokens.get(idx).getEnd()).replaceAll(" ", "").length();//newTokens.get(idx).getEnd() - newTokens.get(idx).getStart(); 
-		    	
-		    	String joinedTok = d.substring(startJoin, endJoin).replaceAll(" ", "");
-		        probs = model.eval(cg.getContext(joinedTok, midJoin));
-		        String best = model.getBestOutcome(probs);
-		        double tokenProb = probs[model.getIndex(best)];
-		        
-		        int prevIdx = idx-1; 
-		        if (prevBest.equals(TokenizerME.NO_SPLIT) 
-	        		&& (!best.equals(TokenizerME.NO_SPLIT) || prevTokenProb > tokenProb)) {
-		        	
-		        	newTokens.set(prevIdx, new Span(prevStartJoin, prevEndJoin));
-		        	//tokProbs.set(prevIdx, prevTokenProb);
-		            newTokens.remove(prevIdx+1);
-		            //tokProbs.remove(prevIdx+1);
-		            //tokList.add(prevJoinedTok);
-		            
-		            //recalculate for new token
-		            startJoin = newTokens.get(prevIdx).getStart();
-			    	endJoin = newTokens.get(prevIdx+1).getEnd();
-			    	midJoin =  d.substring(startJoin, newTokens.get(prevIdx).getEnd()).replaceAll(" ", "").length(); //newTokens.get(prevIdx).getEnd() - newTokens.get(prevIdx).getStart();
-			    	
-			    	joinedTok = d.substring(startJoin, endJoin).replaceAll(" ", "");
-			        probs = model.eval(cg.getContext(joinedTok, midJoin));
-			        best = model.getBestOutcome(probs);
-			        tokenProb = probs[model.getIndex(best)];
-			        
-		            idx--;
-		        }
-		        else{
-		        	tokList.add(d.substring(newTokens.get(prevIdx).getStart(), newTokens.get(prevIdx).getEnd()).replaceAll(" ", ""));
+	    tokProbs.get().clear();
+	    try {
+	      return new JoinDecoder(d).greedy(joinScorer);
+	    } finally {
+	      releaseContexts();
+	    }
+	  }
 
-		        }
-		        prevStartJoin = startJoin;
-		        prevEndJoin = endJoin;
-		        prevJoinedTok = joinedTok;
-		        prevTokenProb = tokenProb;
-		        prevBest = best;
-		    }
-		    
-		    int prevIdx = newTokens.size()-2; 
-		    if (prevBest.equals(TokenizerME.NO_SPLIT)) {
-		        	newTokens.set(prevIdx, new Span(prevStartJoin, prevEndJoin));
-//		        	tokProbs.set(prevIdx, prevTokenProb);
-		            newTokens.remove(prevIdx+1);
-//		            tokProbs.remove(prevIdx+1);
-		            tokList.add(prevJoinedTok);
-		    }
-		    else{
-	        	tokList.add(d.substring(newTokens.get(prevIdx).getStart(), newTokens.get(prevIdx).getEnd()).replaceAll(" ", ""));
-	        	tokList.add(d.substring(newTokens.get(prevIdx+1).getStart(), newTokens.get(prevIdx+1).getEnd()).replaceAll(" ", ""));
-		    }
+	  /**
+	   * Joins adjacent tokens like {@link #join(String)}, but copies the
+	   * joined tokens into a buffer instead of building a String for each.
+	   *
+	   * @param d  The string whose tokens are joined.
+	   * @param out  Receives the joined tokens.
+	   */
+	  public void join(String d, TokenBuffer out){
+	    tokProbs.get().clear();
+	    try {
+	      new JoinDecoder(d).greedy(joinScorer, out);
+	    } finally {
+	      releaseContexts();
 	    }
-	    String[] toks = new String[tokList.size()];
-	    tokList.toArray(toks);
-	    return toks;
-		  
 	  }
-	  
-	  
-	  
+
+	  /**
+	   * Joins adjacent tokens of the whitespace separated string into the
+	   * groups of at most {@link #DEFAULT_MAX_JOIN_GROUP} tokens with the
+	   * highest joint probability of all join and split decisions.
+	   *
+	   * @see #joinBest(String, int)
+	   */
+	  public String[] joinBest(String d){
+	    return joinBest(d, DEFAULT_MAX_JOIN_GROUP);
+	  }
+
+	  /**
+	   * Joins adjacent tokens of the whitespace separated string into the
+	   * groups with the highest joint probability of all join and split
+	   * decisions, found with a Viterbi pass. Unlike {@link #join(String)} a
+	   * decision can be revised by the ones after it, and every boundary is
+	   * scored at most <code>maxGroupSize</code> times.
+	   *
+	   * @param d  The string whose tokens are joined.
+	   * @param maxGroupSize  The maximum number of tokens joined into one.
+	   *
+	   * @return The joined tokens.
+	   */
+	  public String[] joinBest(String d, int maxGroupSize){
+	    tokProbs.get().clear();
+	    try {
+	      return new JoinDecoder(d).best(joinScorer, maxGroupSize);
+	    } finally {
+	      releaseContexts();
+	    }
+	  }
+
+	  /**
+	   * Drops the hashes of the whole text a join scored on this thread.
+	   */
+	  private void releaseContexts() {
+	    if (hcg != null) {
+	      hcg.release();
+	    }
+	  }
+
 	  /**
 	   * Trains a model for the {@link TokenizerNormalizer}.
 	   *
@@ -465,6 +638,17 @@ public class TokenizerME extends AbstractTokenizer{
 	    return new TokenizerModel(maxentModel, manifestInfoEntries, factory);
 	  }
 
+	  /**
+	   * Sets the lexicon of known words. A token which is a known word is not
+	   * split by {@link #split(String)}, and tokens which together are a known
+	   * word are joined by {@link #join(String)} without asking the model.
+	   *
+	   * @param lexicon the lexicon, or <code>null</code> to always use the model
+	   */
+	  public void setLexicon(Lexicon lexicon) {
+	    this.lexicon = lexicon;
+	  }
+
 	  /**
 	   * Returns the value of the alpha-numeric optimization flag.
 	   *
@@ -0,0 +1,189 @@
+package opennlp.tools.tokenize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import opennlp.tools.util.DoubleArrayTrie;
+
+/**
+ * Joins and separates the parts of conjugated Persian verbs by rule, from
+ * the past and present stems of <code>resources/data/verbs.dat</code>, whose
+ * lines have the form <code>past#present</code>.
+ * <p>
+ * The stems are expanded with the prefixes <code>می</code> and
+ * <code>نمی</code> and the personal endings into the continuous forms, and
+ * the past participles with the endings <code>ام</code> to <code>اند</code>
+ * into the perfect forms. These forms are written with a half space after
+ * the prefix or before the ending and are kept in a {@link Lexicon}, so a
+ * token or a pair of tokens is recognized with one walk of its trie:
+ * <ul>
+ * <li>a pair which is a form with the half space between the two tokens
+ *     is joined, like <code>رفته ایم</code>
+ * <li>a token which is a form with half spaces left out is spelled as the
+ *     form, like <code>میروم</code>
+ * <li>a past participle followed by an auxiliary, like <code>شده است</code>,
+ *     and a future auxiliary followed by a past stem, like
+ *     <code>خواهد رفت</code>, are kept apart
+ * </ul>
+ * The tokens these rules produce are complete words, so the
+ * {@link JointDecoder} passes them on without asking the models about them
+ * or about joining them with their neighbours.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class VerbJoiner {
+
+  private static final char ZWNJ = Lexicon.ZWNJ;
+
+  private static final String[] PREFIXES = {"می", "نمی"};
+  private static final String[] PRESENT_ENDINGS = {"م", "ی", "د", "یم", "ید", "ند"};
+  private static final String[] PAST_ENDINGS = {"م", "ی", "", "یم", "ید", "ند"};
+  private static final String[] PERFECT_ENDINGS = {"ام", "ای", "ایم", "اید", "اند"};
+
+  /** Present stems which take a <code>ی</code> before the personal ending. */
+  private static final Set<String> GLIDE_STEMS = new HashSet<>(Arrays.asList("آ", "گو", "جو"));
+
+  private static final Set<String> AUXILIARIES = new HashSet<>(Arrays.asList(
+      "است", "نیست",
+      "بودم", "بودی", "بود", "بودیم", "بودید", "بودند",
+      "باشم", "باشی", "باشد", "باشیم", "باشید", "باشند",
+      "شدم", "شدی", "شد", "شدیم", "شدید", "شدند", "شده",
+      "شوم", "شوی", "شود", "شویم", "شوید", "شوند"));
+
+  private static final Set<String> FUTURE_AUXILIARIES = new HashSet<>();
+
+  static {
+    for (String ending : PRESENT_ENDINGS) {
+      FUTURE_AUXILIARIES.add("خواه" + ending);
+      FUTURE_AUXILIARIES.add("نخواه" + ending);
+    }
+  }
+
+  private final Lexicon forms;
+  private final Set<String> participles = new HashSet<>();
+  private final Set<String> pastStems = new HashSet<>();
+
+  /**
+   * @param verbs the stems of every verb as <code>past#present</code>
+   */
+  public VerbJoiner(Iterable<String> verbs) {
+    List<String> keys = new ArrayList<>();
+    for (String verb : verbs) {
+      int separator = verb.indexOf('#');
+      if (separator < 0) {
+        continue;
+      }
+      String past = verb.substring(0, separator).trim();
+      String present = verb.substring(separator + 1).trim();
+      // a verb without a past stem, like #هست, has no continuous forms
+      if (past.isEmpty()) {
+        continue;
+      }
+
+      pastStems.add(past);
+      String negatedPast = past.charAt(0) == 'آ' ? "نیا" + past.substring(1) : "ن" + past;
+      participles.add(past + "ه");
+      participles.add(negatedPast + "ه");
+      for (String ending : PERFECT_ENDINGS) {
+        keys.add(past + "ه" + ZWNJ + ending);
+        keys.add(negatedPast + "ه" + ZWNJ + ending);
+      }
+
+      String stem = present.endsWith("ا") || GLIDE_STEMS.contains(present) ? present + "ی" : present;
+      for (String prefix : PREFIXES) {
+        for (String ending : PAST_ENDINGS) {
+          keys.add(prefix + ZWNJ + past + ending);
+        }
+        if (!present.isEmpty()) {
+          for (String ending : PRESENT_ENDINGS) {
+            keys.add(prefix + ZWNJ + stem + ending);
+          }
+        }
+      }
+    }
+    forms = new Lexicon(DoubleArrayTrie.build(keys));
+  }
+
+  /**
+   * Reads the stems from a <code>verbs.dat</code> file.
+   */
+  public static VerbJoiner read(Reader verbs) throws IOException {
+    List<String> lines = new ArrayList<>();
+    BufferedReader reader = new BufferedReader(verbs);
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines.add(line.replace("\uFEFF", ""));
+    }
+    return new VerbJoiner(lines);
+  }
+
+  /**
+   * Reads the stems from a <code>verbs.dat</code> file.
+   */
+  public static VerbJoiner read(Path verbs) throws IOException {
+    try (Reader in = Files.newBufferedReader(verbs, StandardCharsets.UTF_8)) {
+      return read(in);
+    }
+  }
+
+  /**
+   * @return the number of verb forms
+   */
+  public int size() {
+    return forms.size();
+  }
+
+  /**
+   * @return the verb form the two tokens are parts of, or <code>null</code>
+   */
+  public String join(String left, String right) {
+    return forms.containsHalfSpaced(left, right) ? left + ZWNJ + right : null;
+  }
+
+  /**
+   * Tells whether the two tokens are verb parts which are written apart,
+   * a past participle and an auxiliary or a future auxiliary and a past stem.
+   */
+  public boolean isSeparate(String left, String right) {
+    return (participles.contains(left) && AUXILIARIES.contains(right))
+        || (FUTURE_AUXILIARIES.contains(left) && pastStems.contains(right));
+  }
+
+  /**
+   * @return how the token is written if it is a verb form, with or without
+   *     some of its half spaces, otherwise <code>null</code>
+   */
+  public String spell(String token) {
+    return forms.spell(token);
+  }
+
+  /**
+   * Joins the parts of the verbs among whitespace separated tokens and
+   * spells the verb forms with their half spaces. Other tokens are
+   * returned unchanged.
+   */
+  public String[] join(String[] tokens) {
+    List<String> result = new ArrayList<>(tokens.length);
+    for (int i = 0; i < tokens.length; i++) {
+      String joined = i + 1 < tokens.length ? join(tokens[i], tokens[i + 1]) : null;
+      if (joined != null) {
+        result.add(joined);
+        i++;
+      }
+      else {
+        String form = spell(tokens[i]);
+        result.add(form != null ? form : tokens[i]);
+      }
+    }
+    return result.toArray(new String[result.size()]);
+  }
+}
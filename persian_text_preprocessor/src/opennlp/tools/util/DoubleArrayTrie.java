@@ -0,0 +1,320 @@
+package opennlp.tools.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * An immutable set of strings stored as a double-array trie. A state is an
+ * int, the transition from state s with the character c leads to
+ * <code>t = base[s] + code(c)</code> if <code>check[t] == s + 1</code>, so
+ * walking a key costs one array lookup per character and the trie can be
+ * walked character by character, for example across the parts of a token
+ * without concatenating them.
+ * <p>
+ * The characters of the keys are numbered by their rank in the alphabet of
+ * the trie, and the code 0 marks the end of a key. The arrays are held in NIO
+ * buffers, so a trie written by {@link #write(OutputStream)} can be
+ * memory-mapped with {@link #open(Path)} and used in place.
+ */
+public final class DoubleArrayTrie {
+
+  /**
+   * The state of the empty prefix.
+   */
+  public static final int ROOT = 0;
+
+  private static final int MAGIC = 0x44415452;
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 24;
+
+  private static final int END = 0;
+
+  private final CharBuffer alphabet;
+  private final IntBuffer base;
+  private final IntBuffer check;
+  private final int size;
+
+  /** The code of every character from the first to the last one of the alphabet. */
+  private final char[] codes;
+  private final char firstChar;
+
+  private DoubleArrayTrie(CharBuffer alphabet, IntBuffer base, IntBuffer check, int size) {
+    this.alphabet = alphabet;
+    this.base = base;
+    this.check = check;
+    this.size = size;
+
+    int n = alphabet.capacity();
+    firstChar = n == 0 ? 0 : alphabet.get(0);
+    codes = new char[n == 0 ? 0 : alphabet.get(n - 1) - firstChar + 1];
+    for (int i = 0; i < n; i++) {
+      codes[alphabet.get(i) - firstChar] = (char) (i + 1);
+    }
+  }
+
+  /**
+   * Builds a trie of the keys. Duplicates are ignored.
+   */
+  public static DoubleArrayTrie build(Collection<String> keys) {
+    String[] sorted = new TreeSet<>(keys).toArray(new String[0]);
+
+    TreeSet<Character> chars = new TreeSet<>();
+    for (String key : sorted) {
+      for (int i = 0; i < key.length(); i++) {
+        chars.add(key.charAt(i));
+      }
+    }
+    char[] alphabet = new char[chars.size()];
+    int n = 0;
+    for (char c : chars) {
+      alphabet[n++] = c;
+    }
+
+    Builder builder = new Builder(sorted, alphabet);
+    builder.place(ROOT, 0, 0, sorted.length);
+    return new DoubleArrayTrie(CharBuffer.wrap(alphabet),
+        IntBuffer.wrap(Arrays.copyOf(builder.base, builder.length)),
+        IntBuffer.wrap(Arrays.copyOf(builder.check, builder.length)), sorted.length);
+  }
+
+  /**
+   * Maps a trie file read-only into memory.
+   */
+  public static DoubleArrayTrie open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a trie from a buffer holding the contents of a trie file.
+   */
+  public static DoubleArrayTrie read(ByteBuffer buffer) throws IOException {
+    buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+      throw new InvalidFormatException("Not a trie file");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new InvalidFormatException("Unsupported trie version: " + buffer.getInt(4));
+    }
+    int size = buffer.getInt(8);
+    int alphabetLength = buffer.getInt(12);
+    int length = buffer.getInt(16);
+
+    int offset = HEADER_LENGTH;
+    CharBuffer alphabet = slice(buffer, offset, alphabetLength * 2).asCharBuffer();
+    offset += pad(alphabetLength * 2);
+    IntBuffer base = slice(buffer, offset, length * 4).asIntBuffer();
+    offset += length * 4;
+    IntBuffer check = slice(buffer, offset, length * 4).asIntBuffer();
+    return new DoubleArrayTrie(alphabet, base, check, size);
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) throws IOException {
+    if (offset + length > buffer.capacity()) {
+      throw new InvalidFormatException("Truncated trie file");
+    }
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset);
+    slice.limit(offset + length);
+    return slice.slice().order(ByteOrder.BIG_ENDIAN);
+  }
+
+  private static int pad(int length) {
+    return (length + 3) & ~3;
+  }
+
+  /**
+   * Writes the trie: a header with the magic number, the format version,
+   * the number of keys, the length of the alphabet, the length of the
+   * arrays and a reserved int, then the alphabet padded to a multiple of 4
+   * bytes, the base array and the check array, all big-endian.
+   *
+   * @param out the stream to write to, it is not closed
+   */
+  public void write(OutputStream out) throws IOException {
+    DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+    dataOut.writeInt(MAGIC);
+    dataOut.writeInt(VERSION);
+    dataOut.writeInt(size);
+    dataOut.writeInt(alphabet.capacity());
+    dataOut.writeInt(base.capacity());
+    dataOut.writeInt(0);
+    for (int i = 0; i < alphabet.capacity(); i++) {
+      dataOut.writeChar(alphabet.get(i));
+    }
+    for (int i = alphabet.capacity() * 2; i < pad(alphabet.capacity() * 2); i++) {
+      dataOut.writeByte(0);
+    }
+    for (int i = 0; i < base.capacity(); i++) {
+      dataOut.writeInt(base.get(i));
+    }
+    for (int i = 0; i < check.capacity(); i++) {
+      dataOut.writeInt(check.get(i));
+    }
+    dataOut.flush();
+  }
+
+  /**
+   * Writes the trie to a file.
+   *
+   * @see #write(OutputStream)
+   */
+  public void write(Path path) throws IOException {
+    try (OutputStream out = Files.newOutputStream(path)) {
+      write(out);
+    }
+  }
+
+  /**
+   * @return the number of keys
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the code of the character, or 0 if no key contains it
+   */
+  private int code(char c) {
+    int i = c - firstChar;
+    return i >= 0 && i < codes.length ? codes[i] : 0;
+  }
+
+  /**
+   * Follows the transition with a character.
+   *
+   * @param state a state returned by an earlier call, or {@link #ROOT}
+   * @return the next state, or -1 if no key continues the prefix of the
+   *     state with the character
+   */
+  public int next(int state, char c) {
+    int code = code(c);
+    if (code == 0) {
+      return -1;
+    }
+    int t = base.get(state) + code;
+    return t < check.capacity() && check.get(t) == state + 1 ? t : -1;
+  }
+
+  /**
+   * Follows the transitions with a range of characters.
+   *
+   * @return the state after <code>text[start, end)</code>, or -1
+   */
+  public int next(int state, CharSequence text, int start, int end) {
+    for (int i = start; i < end && state >= 0; i++) {
+      state = next(state, text.charAt(i));
+    }
+    return state;
+  }
+
+  /**
+   * Tells whether the prefix of the state is a key.
+   */
+  public boolean isKey(int state) {
+    int t = base.get(state) + END;
+    return t < check.capacity() && check.get(t) == state + 1;
+  }
+
+  /**
+   * Tells whether the trie contains the key.
+   */
+  public boolean contains(CharSequence key) {
+    int state = next(ROOT, key, 0, key.length());
+    return state >= 0 && isKey(state);
+  }
+
+  /**
+   * Places the states of the sorted keys in the arrays, each one at the
+   * first base at which all of its transitions are free.
+   */
+  private static final class Builder {
+    private final String[] keys;
+    private final char[] alphabet;
+    int[] base = new int[1024];
+    int[] check = new int[1024];
+    int length = 1;
+    private int firstFree = 1;
+
+    Builder(String[] keys, char[] alphabet) {
+      this.keys = keys;
+      this.alphabet = alphabet;
+      // the root is no child of any state
+      check[ROOT] = -1;
+    }
+
+    private int code(String key, int depth) {
+      return depth == key.length() ? END : Arrays.binarySearch(alphabet, key.charAt(depth)) + 1;
+    }
+
+    private void ensure(int capacity) {
+      if (capacity > base.length) {
+        int newLength = Math.max(capacity, base.length * 2);
+        base = Arrays.copyOf(base, newLength);
+        check = Arrays.copyOf(check, newLength);
+      }
+    }
+
+    /**
+     * Places the children of the state whose prefix is shared by the keys
+     * <code>[from, to)</code> at the given depth.
+     */
+    void place(int state, int depth, int from, int to) {
+      if (from == to) {
+        return;
+      }
+      int[] codes = new int[alphabet.length + 1];
+      int[] starts = new int[alphabet.length + 2];
+      int n = 0;
+      for (int i = from; i < to; i++) {
+        int code = code(keys[i], depth);
+        if (n == 0 || codes[n - 1] != code) {
+          codes[n] = code;
+          starts[n++] = i;
+        }
+      }
+      starts[n] = to;
+
+      while (firstFree < length && check[firstFree] != 0) {
+        firstFree++;
+      }
+      int b = Math.max(1, firstFree - codes[0]);
+      while (true) {
+        ensure(b + codes[n - 1] + 1);
+        boolean free = true;
+        for (int k = 0; k < n && free; k++) {
+          free = check[b + codes[k]] == 0;
+        }
+        if (free) {
+          break;
+        }
+        b++;
+      }
+
+      base[state] = b;
+      for (int k = 0; k < n; k++) {
+        check[b + codes[k]] = state + 1;
+        length = Math.max(length, b + codes[k] + 1);
+      }
+      for (int k = 0; k < n; k++) {
+        if (codes[k] != END) {
+          place(b + codes[k], depth + 1, starts[k], starts[k + 1]);
+        }
+      }
+    }
+  }
+}
@@ -3,20 +3,75 @@ package preprocess;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
-import jhazm.Normalizer;
+import jhazm.NormalizedText;
+import jhazm.SinglePassNormalizer;
+import jhazm.tokenizer.SentenceTokenizer;
 
+import opennlp.tools.tokenize.JointDecoder;
+import opennlp.tools.tokenize.Lexicon;
+import opennlp.tools.tokenize.MappedTokenizerModel;
 import opennlp.tools.tokenize.PersianHalfSpaceChecker;
+import opennlp.tools.tokenize.TokenBuffer;
+import opennlp.tools.tokenize.TokenSink;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.tokenize.VerbJoiner;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.StringUtil;
 
+/**
+ * Normalizes Persian text and splits it into tokens with the tokenizer and
+ * half space checker models.
+ * <p>
+ * The models are loaded once and only read afterwards, so a single instance
+ * (usually {@link #INSTANCE}) can be shared by any number of threads without
+ * external locking.
+ * <p>
+ * By default the tokens are the ones of the models alone; a lexicon of
+ * known words can be enabled with {@link #setLexicon(Lexicon)} and rules for
+ * the parts of conjugated verbs with {@link #setVerbJoiner(VerbJoiner)},
+ * both of which change the tokens.
+ */
 public class Preprocessor {
 	
+	private static final char HALF_SPACE = (char) 8204;
+	
+	/** The number of characters read at a time by the streaming methods. */
+	private static final int WINDOW_SIZE = 8192;
+	
 	public TokenizerME tokenizer;
 	public PersianHalfSpaceChecker halfSpaceChecker;
 	
+	/**
+	 * Rules for the parts of conjugated verbs, <code>null</code> unless
+	 * enabled with {@link #setVerbJoiner(VerbJoiner)}.
+	 */
+	private volatile VerbJoiner verbJoiner;
+	
+	/**
+	 * Tokens of recently seen sentences, <code>null</code> unless enabled with
+	 * {@link #setSentenceCacheSize(int)}.
+	 */
+	private volatile SentenceCache sentenceCache;
+	
     /**
      * Use this static reference to retrieve an instance of the
      * {@link Preprocessor}.
@@ -31,19 +86,31 @@ public class Preprocessor {
 			String s = currentRelativePath.toAbsolutePath().toString();
 			System.out.println("Current relative path is: " + s);
 			
-		    // Loading the TokenizerME model
-			InputStream inputStream = new FileInputStream("resources/models/tokenizer_model");
-			TokenizerModel tokenizerModel = new TokenizerModel(inputStream);
-			// Instantiating the TokenizerME class
-			tokenizer = new TokenizerME(tokenizerModel);
+			// Models converted with MappedTokenizerModel are memory-mapped
+			// instead of being read into the heap
+			Path mappedTokenizerModel = Paths.get("resources/models/tokenizer_model.mapped");
+			Path mappedHalfSpaceModel = Paths.get("resources/models/half_space_checker_model.mapped");
 			
+			if (Files.exists(mappedTokenizerModel)) {
+				tokenizer = new TokenizerME(new MappedTokenizerModel(mappedTokenizerModel));
+			} else {
+			    // Loading the TokenizerME model
+				InputStream inputStream = new FileInputStream("resources/models/tokenizer_model");
+				TokenizerModel tokenizerModel = new TokenizerModel(inputStream);
+				// Instantiating the TokenizerME class
+				tokenizer = new TokenizerME(tokenizerModel);
+			}
 			
-			// Loading the PersianHalfSpaceChecker model
-			inputStream = new FileInputStream("resources/models/half_space_checker_model");
-			TokenizerModel halfSpaceModel = new TokenizerModel(inputStream);
-			// Instantiating the PersianHalfSpaceChecker class
-			halfSpaceChecker = new PersianHalfSpaceChecker(halfSpaceModel);
 			
+			if (Files.exists(mappedHalfSpaceModel)) {
+				halfSpaceChecker = new PersianHalfSpaceChecker(new MappedTokenizerModel(mappedHalfSpaceModel));
+			} else {
+				// Loading the PersianHalfSpaceChecker model
+				InputStream inputStream = new FileInputStream("resources/models/half_space_checker_model");
+				TokenizerModel halfSpaceModel = new TokenizerModel(inputStream);
+				// Instantiating the PersianHalfSpaceChecker class
+				halfSpaceChecker = new PersianHalfSpaceChecker(halfSpaceModel);
+			}
 			
 		} catch (IOException ioexcp){
 			System.out.println("loading the text preprocessor model is failed.");
@@ -52,16 +119,509 @@ public class Preprocessor {
 	}
 	
 	
+	/**
+	 * Normalizes and tokenizes the given text. This method is thread-safe.
+	 *
+	 * @param text the raw text
+	 * @return the tokens of the text
+	 */
 	public String[] run(String text){
 		
-		text = Normalizer.i().run(text);
+		text = SinglePassNormalizer.i().run(text);
+		
+		return tokenizeNormalized(text);
+		
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes the given text like {@link #run(String)}, but
+	 * appends the tokens to a buffer, so a buffer reused from text to text
+	 * replaces the String of every token. This method is thread-safe if every
+	 * thread has its own buffer. Unless the buffer does not record them, the
+	 * tokens come with their probabilities; the sentence cache only keeps
+	 * tokens, so it is not used for a buffer which records probabilities.
+	 *
+	 * @param text the raw text
+	 * @param out receives the tokens
+	 */
+	public void run(String text, TokenBuffer out){
+		
+		text = SinglePassNormalizer.i().run(text);
+		
+		SentenceCache cache = sentenceCache;
+		if (cache != null && !out.recordsProbabilities()) {
+			for (String token : cache.get(text, this::tokenizeUncached)) {
+				out.add(token);
+			}
+			return;
+		}
+		new JointDecoder(tokenizer, halfSpaceChecker, verbJoiner).decode(text, out);
+		
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes UTF-8 encoded text.
+	 *
+	 * @see #run(ByteBuffer, TokenSink)
+	 */
+	public void run(byte[] utf8, int offset, int length, TokenSink sink){
+		run(ByteBuffer.wrap(utf8, offset, length), sink);
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes UTF-8 encoded text, with the tokens
+	 * {@link #run(String)} returns for the decoded text. The bytes are decoded
+	 * and normalized chunk by chunk into buffers of the calling thread, so
+	 * neither the document nor its normalized text is ever a String. Each
+	 * whitespace-separated word is still copied into a String for the models,
+	 * and the sink gets each token as the whole of its own character sequence,
+	 * not as a range of the normalized text: a token the models formed by
+	 * joining words or inserting half spaces does not occur in it. The
+	 * sentence cache is not used. This method is thread-safe, but the sink
+	 * must not call this preprocessor.
+	 *
+	 * @param utf8 the raw text between the position and the limit of the
+	 *     buffer, for example a memory-mapped file; the buffer is not changed
+	 * @param sink receives the tokens in order
+	 */
+	public void run(ByteBuffer utf8, TokenSink sink){
+		
+		CharBuffer normalized = SinglePassNormalizer.i().runUtf8(utf8);
+		char[] d = normalized.array();
+		int end = normalized.arrayOffset() + normalized.limit();
+		
+		JointDecoder.Pass pass = new JointDecoder(tokenizer, halfSpaceChecker, verbJoiner)
+				.start(sink);
+		int start = -1;
+		for (int i = normalized.arrayOffset(); i < end; i++) {
+			if (StringUtil.isWhitespace(d[i])) {
+				if (start >= 0) {
+					pass.accept(new String(d, start, i - start));
+					start = -1;
+				}
+			} else if (start < 0) {
+				start = i;
+			}
+		}
+		if (start >= 0) {
+			pass.accept(new String(d, start, end - start));
+		}
+		pass.finish();
+		
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes a text read from a stream, with the tokens
+	 * {@link #run(String)} returns for the whole text. The text is read one
+	 * window of characters at a time and the tokens are handed to the sink as
+	 * soon as they are decided, so the memory used does not depend on the
+	 * length of the text, only on the length of its longest tokens. The sink
+	 * must not call this preprocessor.
+	 *
+	 * @param in the raw text, read to its end but not closed
+	 * @param sink receives the tokens in order
+	 */
+	public void run(Reader in, TokenSink sink) throws IOException{
+		
+		char[] window = new char[WINDOW_SIZE];
+		CharBuffer chars = CharBuffer.wrap(window);
+		Pass pass = start(sink);
+		int n;
+		while ((n = in.read(window)) >= 0) {
+			pass.push(chars, 0, n);
+		}
+		pass.finish();
+		
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes UTF-8 encoded text read from a channel.
+	 * Malformed input is replaced like by {@link #run(ByteBuffer, TokenSink)}.
+	 *
+	 * @param in the raw text, read to its end but not closed
+	 * @see #run(Reader, TokenSink)
+	 */
+	public void run(ReadableByteChannel in, TokenSink sink) throws IOException{
+		run(Channels.newReader(in, StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE), WINDOW_SIZE), sink);
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes a UTF-8 encoded file.
+	 *
+	 * @see #run(Reader, TokenSink)
+	 */
+	public void run(Path path, TokenSink sink) throws IOException{
+		try (FileChannel in = FileChannel.open(path)) {
+			run(in, sink);
+		}
+	}
+	
+	
+	/**
+	 * Starts processing a text which is passed to the returned {@link Pass} in
+	 * pieces, like {@link #run(Reader, TokenSink)} does.
+	 *
+	 * @param sink receives the tokens in order, most of them before the text
+	 *     is finished
+	 */
+	public Pass start(TokenSink sink){
+		return new Pass(sink);
+	}
+	
+	
+	/**
+	 * The state of processing one text. The normalizer holds back a few
+	 * characters, the whitespace token being read and the tokens the decoder
+	 * may still join, and everything else is passed on.
+	 */
+	public final class Pass {
+		
+		private final SinglePassNormalizer.Pass normalizer;
+		private final JointDecoder.Pass decoder;
+		private final StringBuilder token = new StringBuilder();
+		
+		private Pass(TokenSink sink){
+			decoder = new JointDecoder(tokenizer, halfSpaceChecker, verbJoiner)
+					.start(sink);
+			normalizer = SinglePassNormalizer.i().start(this::split);
+		}
+		
+		/**
+		 * Processes the next piece of the text, <code>text[start, end)</code>.
+		 */
+		public void push(CharSequence text, int start, int end){
+			normalizer.push(text, start, end);
+		}
+		
+		/**
+		 * Processes the next piece of the text.
+		 */
+		public void push(CharSequence text){
+			push(text, 0, text.length());
+		}
+		
+		/**
+		 * Ends the text and passes on the remaining tokens.
+		 */
+		public void finish(){
+			normalizer.finish();
+			endToken();
+			decoder.finish();
+		}
+		
+		/**
+		 * Splits the normalized text on whitespace, like the
+		 * WhitespaceTokenizer in {@link #run(String)}.
+		 */
+		private void split(CharBuffer normalized){
+			for (int i = 0; i < normalized.limit(); i++) {
+				char c = normalized.get(i);
+				if (StringUtil.isWhitespace(c)) {
+					endToken();
+				} else {
+					token.append(c);
+				}
+			}
+		}
+		
+		private void endToken(){
+			if (token.length() > 0) {
+				decoder.accept(token.toString());
+				token.setLength(0);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Enables rules which settle the parts of conjugated verbs before the
+	 * models see them; they are off by default, so the tokens are the ones of
+	 * the models alone. The rules are usually read from the stems shipped in
+	 * <code>resources/data/verbs.dat</code> with
+	 * {@link VerbJoiner#read(Path)}.
+	 * <p>
+	 * With the rules the segmentation of verbs changes: the parts of a
+	 * continuous or perfect form written apart are joined with a half space
+	 * (<code>رفته ایم</code> becomes <code>رفته&zwnj;ایم</code>), a form with its
+	 * half spaces left out is respelled (<code>میروم</code> becomes
+	 * <code>می&zwnj;روم</code>), and a past participle and its auxiliary or a
+	 * future auxiliary and a past stem are always separate tokens, so
+	 * <code>شده&zwnj;است</code> becomes <code>شده</code>, <code>است</code>. These
+	 * tokens are never joined with their neighbours. Replacing the rules
+	 * drops the sentence cache, whose tokens were made with the old ones.
+	 *
+	 * @param verbJoiner the rules, or <code>null</code> to leave verbs to the models
+	 */
+	public void setVerbJoiner(VerbJoiner verbJoiner){
+		this.verbJoiner = verbJoiner;
+		dropSentenceCache();
+	}
+	
+	
+	/**
+	 * Enables a lexicon of correctly written words, which settles known words
+	 * and joins by lookup before the models are asked; it is off by default.
+	 * The lexicon is usually converted from
+	 * <code>resources/data/words.dat</code> into
+	 * <code>resources/data/words.lexicon</code> and opened with
+	 * {@link Lexicon#open(Path)}.
+	 * <p>
+	 * With the lexicon the tokens change wherever the models disagree with
+	 * it: a known word is neither split nor respelled by the models but
+	 * written as in the lexicon, and two tokens which together are a known
+	 * word are joined, with or without a half space as in the lexicon. The
+	 * lexicon is set on {@link #tokenizer} and {@link #halfSpaceChecker}, and
+	 * replacing it drops the sentence cache.
+	 *
+	 * @param lexicon the lexicon, or <code>null</code> to leave every word to the models
+	 */
+	public void setLexicon(Lexicon lexicon){
+		tokenizer.setLexicon(lexicon);
+		halfSpaceChecker.setLexicon(lexicon);
+		dropSentenceCache();
+	}
+	
+	
+	/**
+	 * Replaces the sentence cache by an empty one, as its tokens were made
+	 * with rules or words which have changed.
+	 */
+	private void dropSentenceCache(){
+		SentenceCache cache = sentenceCache;
+		if (cache != null) {
+			sentenceCache = new SentenceCache(cache.capacity());
+		}
+	}
+	
+	
+	/**
+	 * Enables a cache of the tokens of the most recently processed sentences,
+	 * so that repeated headlines, footers and bylines are only tokenized once.
+	 * The results are the same with or without the cache. Concurrent requests
+	 * for the same sentence are coalesced into a single computation. Replacing
+	 * the cache drops everything cached so far.
+	 * <p>
+	 * {@link #runBatch(List, Executor)} and {@link #runAll(Stream)} look up
+	 * every sentence of a document. {@link #run(String)} looks up the whole
+	 * normalized text, as its tokens may be joined across a sentence
+	 * boundary, so it only hits for a text that is repeated as a whole, such
+	 * as a headline passed on its own. A text of more than 1024 characters is
+	 * never cached, so a capacity of N keeps at most N short texts, not N
+	 * whole documents.
+	 *
+	 * @param capacity the number of sentences to keep, 0 disables the cache
+	 */
+	public void setSentenceCacheSize(int capacity){
+		sentenceCache = capacity > 0 ? new SentenceCache(capacity) : null;
+	}
+	
+	
+	/**
+	 * @return the number of sentences found in the sentence cache, 0 when it is disabled
+	 */
+	public long getSentenceCacheHits(){
+		SentenceCache cache = sentenceCache;
+		return cache == null ? 0 : cache.hits();
+	}
+	
+	
+	/**
+	 * @return the number of sentences not found in the sentence cache, 0 when it is disabled
+	 */
+	public long getSentenceCacheMisses(){
+		SentenceCache cache = sentenceCache;
+		return cache == null ? 0 : cache.misses();
+	}
+	
+	
+	/**
+	 * @return the number of sentences in the sentence cache, 0 when it is disabled
+	 */
+	public int getSentenceCacheSize(){
+		SentenceCache cache = sentenceCache;
+		return cache == null ? 0 : cache.size();
+	}
+	
+	
+	/**
+	 * @return a summary of the size and the hits and misses of the sentence
+	 *     cache, for logging; see {@link #getSentenceCacheHits()} for the numbers
+	 */
+	public String getSentenceCacheStats(){
+		SentenceCache cache = sentenceCache;
+		return cache == null ? "disabled" : cache.toString();
+	}
+	
+	
+	/**
+	 * Normalizes and tokenizes the given text like {@link #run(String)}, but
+	 * returns the position of every token in the raw <code>text</code> instead
+	 * of the token itself. Characters that normalization removed or replaced
+	 * are mapped back to the characters they came from, so the spans can be
+	 * used to highlight the tokens in the original document.
+	 *
+	 * @param text the raw text
+	 * @return the spans of the tokens in <code>text</code>
+	 */
+	public Span[] runPos(String text){
+		
+		NormalizedText normalized = SinglePassNormalizer.i().runWithOffsets(text);
+		String d = normalized.getText();
+		String[] tokens = tokenizeNormalized(d);
 		
-		String[] tokens = tokenizer.split(text);
+		// The tokens are the normalized text without some of its spaces and
+		// with zwnj inserted or put in place of a space, so they can be aligned
+		// with it in one scan.
+		Span[] spans = new Span[tokens.length];
+		int p = 0;
+		for (int t = 0; t < tokens.length; t++) {
+			String token = tokens[t];
+			while (p < d.length() && StringUtil.isWhitespace(d.charAt(p))) {
+				p++;
+			}
+			int start = p;
+			for (int i = 0; i < token.length() && p < d.length(); i++) {
+				char c = token.charAt(i);
+				if (c == d.charAt(p)) {
+					p++;
+				} else if (c == HALF_SPACE) {
+					if (StringUtil.isWhitespace(d.charAt(p))) {
+						p++;
+					}
+				} else {
+					while (p < d.length() && StringUtil.isWhitespace(d.charAt(p))) {
+						p++;
+					}
+					p++;
+				}
+			}
+			spans[t] = new Span(normalized.getOriginalStart(start), normalized.getOriginalEnd(p));
+		}
+		return spans;
 		
-		String nomalizedText = halfSpaceChecker.normalize(tokens);
+	}
+	
+	
+	/**
+	 * Processes a collection of documents on the common fork-join pool.
+	 *
+	 * @see #runBatch(List, Executor)
+	 */
+	public List<String[]> runBatch(List<String> texts){
+		return runBatch(texts, ForkJoinPool.commonPool());
+	}
+	
+	
+	/**
+	 * Processes a collection of documents in parallel. Every document is
+	 * normalized and split into sentences by one task, and each of its
+	 * sentences is then tokenized by a task of its own, so a few long documents
+	 * still spread over all workers. Unlike {@link #run(String)}, tokens are
+	 * never joined across a sentence boundary.
+	 *
+	 * @param texts the raw documents
+	 * @param executor the executor that runs the tasks
+	 * @return the tokens of every document, in the order of <code>texts</code>
+	 */
+	public List<String[]> runBatch(List<String> texts, Executor executor){
 		
-		tokens = tokenizer.join(nomalizedText);
+		List<CompletableFuture<String[]>> futures = new ArrayList<>(texts.size());
+		for (String text : texts) {
+			futures.add(CompletableFuture.supplyAsync(() -> sentences(text), executor)
+					.thenCompose(sentences -> tokenizeAll(sentences, executor)));
+		}
+		
+		List<String[]> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<String[]> future : futures) {
+			results.add(future.join());
+		}
+		return results;
+		
+	}
+	
+	
+	/**
+	 * Processes a stream of documents in parallel, one document per task. The
+	 * documents are split into sentences as in {@link #runBatch(List, Executor)}.
+	 *
+	 * @param texts the raw documents
+	 * @return a parallel stream of the tokens of every document, whose encounter
+	 *     order is the order of <code>texts</code>
+	 */
+	public Stream<String[]> runAll(Stream<String> texts){
+		return texts.parallel().map(text -> {
+			List<String> sentences = sentences(text);
+			List<String[]> parts = new ArrayList<>(sentences.size());
+			for (String sentence : sentences) {
+				parts.add(tokenizeNormalized(sentence));
+			}
+			return concat(parts);
+		});
+	}
+	
+	
+	private List<String> sentences(String text){
+		return SentenceTokenizer.i().tokenize(SinglePassNormalizer.i().run(text));
+	}
+	
+	
+	private String[] tokenizeNormalized(String text){
+		SentenceCache cache = sentenceCache;
+		if (cache != null) {
+			return cache.get(text, this::tokenizeUncached);
+		}
+		return tokenizeUncached(text);
+	}
+	
+	
+	private String[] tokenizeUncached(String text){
+		// splits, inserts half spaces and joins in one pass, with the result of
+		// tokenizer.join(halfSpaceChecker.normalize(tokenizer.split(text))),
+		// after the verb parts are settled by verbJoiner if it is enabled
+		return new JointDecoder(tokenizer, halfSpaceChecker, verbJoiner).decode(text);
+	}
+	
+	
+	private CompletableFuture<String[]> tokenizeAll(List<String> sentences, Executor executor){
+		
+		List<CompletableFuture<String[]>> futures = new ArrayList<>(sentences.size());
+		for (String sentence : sentences) {
+			futures.add(CompletableFuture.supplyAsync(() -> tokenizeNormalized(sentence), executor));
+		}
+		
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(done -> {
+					List<String[]> parts = new ArrayList<>(futures.size());
+					for (CompletableFuture<String[]> future : futures) {
+						parts.add(future.join());
+					}
+					return concat(parts);
+				});
 		
+	}
+	
+	
+	private static String[] concat(List<String[]> parts){
+		
+		int length = 0;
+		for (String[] part : parts) {
+			length += part.length;
+		}
+		
+		String[] tokens = new String[length];
+		int offset = 0;
+		for (String[] part : parts) {
+			System.arraycopy(part, 0, tokens, offset, part.length);
+			offset += part.length;
+		}
 		return tokens;
 		
 	}
@@ -0,0 +1,115 @@
+package preprocess;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import opennlp.tools.util.BoundedCache;
+
+/**
+ * Remembers the tokens of recently processed sentences. The sentence text is
+ * the key, so a hash collision can never return the tokens of another
+ * sentence. When several threads ask for the same uncached sentence at once,
+ * only one of them computes it and the others wait for its result. Texts
+ * longer than {@link #MAX_LENGTH} are never cached, so the cache holds at
+ * most <code>capacity * MAX_LENGTH</code> characters of keys however long the
+ * texts it is asked for are.
+ */
+class SentenceCache {
+
+	/**
+	 * The length of the longest cached text, well above that of a sentence.
+	 */
+	static final int MAX_LENGTH = 1 << 10;
+
+	private final BoundedCache<String, String[]> cache;
+
+	private final ConcurrentMap<String, CompletableFuture<String[]>> inFlight = new ConcurrentHashMap<>();
+
+	SentenceCache(int capacity){
+		cache = new BoundedCache<>(capacity);
+	}
+
+
+	/**
+	 * Returns the tokens of the sentence, computing them with
+	 * <code>tokenize</code> unless they are cached or being computed by
+	 * another thread. Every caller gets its own copy of the array. A text
+	 * longer than {@link #MAX_LENGTH} is tokenized without a lookup.
+	 */
+	String[] get(String sentence, Function<String, String[]> tokenize){
+
+		if (sentence.length() > MAX_LENGTH) {
+			return tokenize.apply(sentence);
+		}
+
+		String[] tokens = cache.get(sentence);
+		if (tokens != null) {
+			return tokens.clone();
+		}
+
+		CompletableFuture<String[]> future = new CompletableFuture<>();
+		CompletableFuture<String[]> running = inFlight.putIfAbsent(sentence, future);
+		if (running != null) {
+			return running.join().clone();
+		}
+
+		try {
+			// another thread may have cached the sentence and left inFlight
+			// between the lookup above and the registration of the future
+			tokens = cache.peek(sentence);
+			if (tokens == null) {
+				tokens = tokenize.apply(sentence);
+				cache.put(sentence, tokens);
+			}
+			future.complete(tokens);
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(sentence, future);
+		}
+		return tokens.clone();
+
+	}
+
+
+	/**
+	 * @return the number of lookups which found the tokens of a sentence
+	 */
+	long hits(){
+		return cache.hits();
+	}
+
+
+	/**
+	 * @return the number of lookups which did not find the tokens of a sentence
+	 */
+	long misses(){
+		return cache.misses();
+	}
+
+
+	/**
+	 * @return the maximum number of cached sentences
+	 */
+	int capacity(){
+		return cache.capacity();
+	}
+
+
+	/**
+	 * @return the number of cached sentences
+	 */
+	int size(){
+		return cache.size();
+	}
+
+
+	@Override
+	public String toString(){
+		return cache.toString();
+	}
+
+}